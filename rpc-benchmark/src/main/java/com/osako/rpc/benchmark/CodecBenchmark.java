@@ -0,0 +1,78 @@
+package com.osako.rpc.benchmark;
+
+import com.osako.codec.RpcDecoder;
+import com.osako.codec.RpcEncoder;
+import com.osako.compress.Compressors;
+import com.osako.entity.RpcRequest;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RpcEncoder / RpcDecoder through EmbeddedChannels: the encoded frame of one channel is fed to the decoder of the other,
+ * covers header, serialization, (optional) compression and framing
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+
+    @Param({"16", "1024", "65536"})
+    private int payloadSize;
+
+    @Param({"none", "lz4"})
+    private String compressor;
+
+    private RpcRequest request;
+    private EmbeddedChannel encoderChannel;
+    private EmbeddedChannel decoderChannel;
+
+    @Setup
+    public void setup() {
+        request = Payloads.echoRequest(payloadSize);
+        if (!"none".equals(compressor)) {
+            request.setCompressor(Compressors.get(compressor).getId());
+        }
+        encoderChannel = new EmbeddedChannel(new RpcEncoder(RpcRequest.class));
+        decoderChannel = new EmbeddedChannel(new RpcDecoder(RpcRequest.class));
+    }
+
+    @TearDown
+    public void tearDown() {
+        encoderChannel.finishAndReleaseAll();
+        decoderChannel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public int encode() {
+        encoderChannel.writeOutbound(request);
+        ByteBuf frame = encoderChannel.readOutbound();
+        int length = frame.readableBytes();
+        frame.release();
+        return length;
+    }
+
+    @Benchmark
+    public RpcRequest encodeDecode() {
+        encoderChannel.writeOutbound(request);
+        ByteBuf frame = encoderChannel.readOutbound();
+        decoderChannel.writeInbound(frame);
+        return decoderChannel.readInbound();
+    }
+}
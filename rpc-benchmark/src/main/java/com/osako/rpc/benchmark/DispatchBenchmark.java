@@ -0,0 +1,106 @@
+package com.osako.rpc.benchmark;
+
+import com.osako.codec.BatchWriter;
+import com.osako.codec.RpcEncoder;
+import com.osako.entity.RpcRequest;
+import com.osako.entity.RpcResponse;
+import com.osako.rpc.server.MethodInvoker;
+import com.osako.rpc.server.MethodKey;
+import com.osako.rpc.server.RpcServerHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server side dispatch overhead, without network and serialization:
+ * Method.invoke (how requests used to be dispatched) against the precomputed MethodInvoker,
+ * and the whole RpcServerHandler (lookup by names or by handshake method id, invoke, build the response)
+ * with the service method run inline instead of on the business executor
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DispatchBenchmark {
+
+    private final EchoService service = new EchoServiceImpl();
+    private final Object[] parameters = {"world"};
+
+    private Method method;
+    private MethodInvoker invoker;
+    private EmbeddedChannel channel;
+    private RpcRequest requestByName;
+    private RpcRequest requestById;
+
+    @Setup
+    public void setup() throws Exception {
+        method = EchoService.class.getMethod("hello", String.class);
+        invoker = new MethodInvoker(EchoService.class.getName(), service, method, null, (byte) 0, null, null, 0);
+
+        MethodKey key = new MethodKey(EchoService.class.getName(), "", "hello", method.getParameterTypes());
+        Map<MethodKey, MethodInvoker> invokerMap = new HashMap<>();
+        invokerMap.put(key, invoker);
+        MethodInvoker[] invokerTable = {null, invoker};
+        Map<String, Integer> methodIds = Map.of(key.toString(), 1);
+
+        channel = new EmbeddedChannel();
+        channel.pipeline().addLast(new RpcServerHandler(Map.copyOf(invokerMap), invokerTable, methodIds, Runnable::run,
+                new BatchWriter(channel, 50, 64), 0, new RpcEncoder(RpcResponse.class)));
+
+        requestByName = new RpcRequest();
+        requestByName.setRequestId(1);
+        requestByName.setInterfaceName(EchoService.class.getName());
+        requestByName.setServiceVersion("");
+        requestByName.setMethodName("hello");
+        requestByName.setParameterTypes(method.getParameterTypes());
+        requestByName.setParameters(parameters);
+
+        requestById = new RpcRequest();
+        requestById.setRequestId(2);
+        requestById.setMethodId(1);
+        requestById.setParameters(parameters);
+    }
+
+    @TearDown
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public Object reflectiveInvoke() throws Exception {
+        return method.invoke(service, parameters);
+    }
+
+    @Benchmark
+    public Object methodInvoker() throws Exception {
+        return invoker.invoke(parameters);
+    }
+
+    @Benchmark
+    public RpcResponse handlerByName() {
+        channel.writeInbound(requestByName);
+        return channel.readOutbound();
+    }
+
+    @Benchmark
+    public RpcResponse handlerByMethodId() {
+        channel.writeInbound(requestById);
+        return channel.readOutbound();
+    }
+}
@@ -0,0 +1,11 @@
+package com.osako.rpc.benchmark;
+
+/**
+ * Service called by the benchmarks, the payload is sent back unchanged so only the RPC path is measured
+ */
+public interface EchoService {
+
+    String hello(String name);
+
+    byte[] echo(byte[] payload);
+}
@@ -0,0 +1,17 @@
+package com.osako.rpc.benchmark;
+
+import com.osako.rpc.server.RpcService;
+
+@RpcService(interfaceName = EchoService.class)
+public class EchoServiceImpl implements EchoService {
+
+    @Override
+    public String hello(String name) {
+        return "Hello! " + name;
+    }
+
+    @Override
+    public byte[] echo(byte[] payload) {
+        return payload;
+    }
+}
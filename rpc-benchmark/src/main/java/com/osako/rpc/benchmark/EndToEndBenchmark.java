@@ -0,0 +1,94 @@
+package com.osako.rpc.benchmark;
+
+import com.osako.rpc.client.ConnectionManager;
+import com.osako.rpc.client.RpcProxy;
+import com.osako.rpc.registry.Provider;
+import com.osako.rpc.registry.ServiceDiscovery;
+import com.osako.rpc.server.RpcServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.GenericApplicationContext;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RpcProxy -> RpcServer over loopback in one JVM, throughput and latency distribution of synchronous calls
+ * made by many threads over the pooled connection
+ * Discovery is a static provider list instead of Zookeeper, so the load balancer path is still taken
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+@Threads(16)
+@State(Scope.Benchmark)
+public class EndToEndBenchmark {
+
+    @Param({"16", "4096"})
+    private int payloadSize;
+
+    // requests per batch frame, 0 disables batching
+    @Param({"0", "32"})
+    private int batchSize;
+
+    private GenericApplicationContext context;
+    private RpcServer server;
+    private EchoService echoService;
+    private byte[] payload;
+
+    @Setup
+    public void setup() throws Exception {
+        String address = "127.0.0.1:" + freePort();
+
+        context = new GenericApplicationContext();
+        context.registerBean(EchoServiceImpl.class);
+        context.refresh();
+        server = new RpcServer(address);
+        server.setApplicationContext(context);
+        server.start();
+
+        // every JMH fork is a new JVM, so the connection settings of this trial apply to all its connections
+        if (batchSize > 0) {
+            ConnectionManager.getInstance().setBatching(0, batchSize);
+        }
+        List<Provider> providers = List.of(Provider.parse(address));
+        ServiceDiscovery staticDiscovery = serviceName -> providers;
+        echoService = new RpcProxy(staticDiscovery).create(EchoService.class);
+        payload = Payloads.bytes(payloadSize);
+        // connect and complete the handshake before measuring
+        echoService.echo(payload);
+    }
+
+    @TearDown
+    public void tearDown() {
+        ConnectionManager.getInstance().shutdown();
+        server.stop();
+        context.close();
+    }
+
+    @Benchmark
+    public byte[] echo() {
+        return echoService.echo(payload);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
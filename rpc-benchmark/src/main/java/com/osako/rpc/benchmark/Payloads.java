@@ -0,0 +1,45 @@
+package com.osako.rpc.benchmark;
+
+import com.osako.entity.RpcRequest;
+import com.osako.entity.RpcResponse;
+
+import java.util.Random;
+
+/**
+ * Messages of a given payload size shared by the benchmarks
+ */
+final class Payloads {
+
+    private Payloads() {
+    }
+
+    /**
+     * half random, half repeated bytes, so compression has something to do without being trivial
+     */
+    static byte[] bytes(int size) {
+        byte[] payload = new byte[size];
+        new Random(42).nextBytes(payload);
+        for (int i = size / 2; i < size; i++) {
+            payload[i] = (byte) (i % 16);
+        }
+        return payload;
+    }
+
+    static RpcRequest echoRequest(int size) {
+        RpcRequest request = new RpcRequest();
+        request.setRequestId(1);
+        request.setInterfaceName(EchoService.class.getName());
+        request.setServiceVersion("");
+        request.setMethodName("echo");
+        request.setParameterTypes(new Class<?>[]{byte[].class});
+        request.setParameters(new Object[]{bytes(size)});
+        return request;
+    }
+
+    static RpcResponse echoResponse(int size) {
+        RpcResponse response = new RpcResponse();
+        response.setRequestId(1);
+        response.setResult(bytes(size));
+        return response;
+    }
+}
@@ -0,0 +1,95 @@
+package com.osako.rpc.benchmark;
+
+import com.osako.entity.RpcRequest;
+import com.osako.entity.RpcResponse;
+import com.osako.serializer.HessianSerializer;
+import com.osako.serializer.JdkSerializer;
+import com.osako.serializer.KryoSerializer;
+import com.osako.serializer.ProtostuffSerializer;
+import com.osako.serializer.Serializer;
+import com.osako.serializer.Serializers;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.Unpooled;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialize + deserialize round trip of a request and of a response through each serializer,
+ * into a reused buffer so only the serializer itself is measured
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializerBenchmark {
+
+    @Param({"protostuff", "kryo", "hessian", "jdk"})
+    private String serializer;
+
+    @Param({"16", "1024", "65536"})
+    private int payloadSize;
+
+    private Serializer impl;
+    private RpcRequest request;
+    private RpcResponse response;
+    private ByteBuf buffer;
+
+    @Setup
+    public void setup() {
+        impl = Serializers.get(id(serializer));
+        request = Payloads.echoRequest(payloadSize);
+        response = Payloads.echoResponse(payloadSize);
+        buffer = Unpooled.buffer(payloadSize * 2 + 1024);
+    }
+
+    @TearDown
+    public void tearDown() {
+        buffer.release();
+    }
+
+    @Benchmark
+    public RpcRequest requestRoundTrip() throws IOException {
+        buffer.clear();
+        impl.serialize(request, new ByteBufOutputStream(buffer));
+        return impl.deserialize(new ByteBufInputStream(buffer), RpcRequest.class);
+    }
+
+    @Benchmark
+    public RpcResponse responseRoundTrip() throws IOException {
+        buffer.clear();
+        impl.serialize(response, new ByteBufOutputStream(buffer));
+        return impl.deserialize(new ByteBufInputStream(buffer), RpcResponse.class);
+    }
+
+    private static byte id(String name) {
+        switch (name) {
+            case "protostuff":
+                return ProtostuffSerializer.ID;
+            case "kryo":
+                return KryoSerializer.ID;
+            case "hessian":
+                return HessianSerializer.ID;
+            case "jdk":
+                return JdkSerializer.ID;
+            default:
+                throw new IllegalArgumentException("unknown serializer: " + name);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.osako.rpc.client;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Asynchronous view of a service proxy, created by RpcProxy.createAsync
+ * The call is written like a normal method call on the service interface, but instead of blocking
+ * the caller gets a CompletableFuture that is completed when the matching RpcResponse arrives
+ *
+ * 使用示例
+ * AsyncProxy<HelloService> helloService = rpcProxy.createAsync(HelloService.class);
+ * CompletableFuture<String> result = helloService.call(service -> service.hello("World"));
+ *
+ * @param <T> 服务的接口类型
+ */
+public class AsyncProxy<T> {
+
+    private final T proxy;
+
+    AsyncProxy(T proxy) {
+        this.proxy = proxy;
+    }
+
+    /**
+     * invoke exactly one method of the service and return the future of its result
+     * The future of a @OneWay method is completed with null once the request is written, the future of a method
+     * returning a stream (Iterator, Stream, Flow.Publisher) is completed right away with the stream,
+     * whose elements arrive afterwards
+     * @param invocation
+     * @param <R>
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <R> CompletableFuture<R> call(Function<T, R> invocation) {
+        CompletableFuture<?>[] captured = new CompletableFuture<?>[1];
+        RpcInvocationHandler.ASYNC_CAPTURE.set(captured);
+        try {
+            invocation.apply(proxy);
+        } finally {
+            RpcInvocationHandler.ASYNC_CAPTURE.remove();
+        }
+        if (captured[0] == null) {
+            throw new IllegalStateException("the invocation must call a method of the service proxy");
+        }
+        return (CompletableFuture<R>) captured[0];
+    }
+
+    /**
+     * same as call(), for methods without return value
+     * @param invocation
+     * @return
+     */
+    public CompletableFuture<Void> run(Consumer<T> invocation) {
+        return call(service -> {
+            invocation.accept(service);
+            return null;
+        }).thenApply(result -> null);
+    }
+}
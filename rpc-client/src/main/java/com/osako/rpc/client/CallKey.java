@@ -0,0 +1,28 @@
+package com.osako.rpc.client;
+
+import java.util.Arrays;
+
+/**
+ * Arguments of a call compared by content (arrays too), the key of the result cache and of the single flight table
+ * Holds a copy of the argument array, so later changes of the array by the caller do not affect it
+ */
+final class CallKey {
+
+    private final Object[] args;
+    private final int hash;
+
+    CallKey(Object[] args) {
+        this.args = args == null ? new Object[0] : args.clone();
+        this.hash = Arrays.deepHashCode(this.args);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof CallKey && hash == ((CallKey) o).hash && Arrays.deepEquals(args, ((CallKey) o).args));
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
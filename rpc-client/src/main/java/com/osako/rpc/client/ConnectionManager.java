@@ -0,0 +1,280 @@
+package com.osako.rpc.client;
+
+import com.osako.codec.RpcDecoder;
+import com.osako.codec.RpcEncoder;
+import com.osako.rpc.registry.Provider;
+import com.osako.transport.Transports;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connection pool of the client side, keeps one long-lived RpcClient per server address (host:port),
+ * all connections share one event loop group, created with the first connection
+ * With the native transport, a server on the same host that advertises a Unix domain socket is connected through it
+ */
+public class ConnectionManager {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConnectionManager.class);
+
+    private static final ConnectionManager INSTANCE = new ConnectionManager();
+
+    // created with the first connection, NIO or epoll, released by shutdown()
+    private EventLoopGroup group;
+
+    // use the native epoll transport (Linux only) and the Unix domain sockets of local servers
+    private volatile boolean nativeTransport;
+
+    // addresses of this host, servers listening on one of them are local
+    private volatile Set<String> localAddresses;
+
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 3000;
+
+    // host:port -> client, completed once it is connected
+    private final Map<String, CompletableFuture<RpcClient>> clients = new ConcurrentHashMap<>();
+
+    // a connect that takes longer fails
+    private volatile int connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+
+    // maximum length of a response frame, a longer frame fails the connection
+    private volatile int maxFrameLength = RpcDecoder.DEFAULT_MAX_FRAME_LENGTH;
+
+    // request bodies larger than this are compressed (if the proxy has a compressor)
+    private volatile int compressThreshold = RpcEncoder.DEFAULT_COMPRESS_THRESHOLD;
+
+    // request batching, disabled by default
+    private volatile int batchMaxDelayMicros;
+    private volatile int batchMaxSize;
+
+    // runs retries and hedged requests, which may block connecting to another provider; daemon threads that time out
+    private final ThreadPoolExecutor executor;
+
+    private ConnectionManager() {
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                new DefaultThreadFactory("rpc-client-retry", true));
+        executor.allowCoreThreadTimeOut(true);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "rpc-client-shutdown"));
+    }
+
+    public static ConnectionManager getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * executor of the work of the client that may block outside the event loop, e.g. connecting for a retry
+     */
+    Executor executor() {
+        return executor;
+    }
+
+    /**
+     * get the connected client of the server, connect if there is no usable connection yet
+     * @param host
+     * @param port
+     * @return
+     * @throws InterruptedException
+     */
+    public RpcClient getClient(String host, int port) throws InterruptedException {
+        return getClient(new Provider(host, port, Provider.DEFAULT_WEIGHT));
+    }
+
+    /**
+     * get the connected client of the provider, connect if there is no usable connection yet
+     * Only the first caller connects to an address, concurrent callers of the same address wait for its connection,
+     * callers of other addresses are not blocked by it; a connect that fails is not cached, the next call tries again
+     * @param provider
+     * @return
+     * @throws InterruptedException
+     */
+    public RpcClient getClient(Provider provider) throws InterruptedException {
+        String address = provider.getAddress();
+        while (true) {
+            CompletableFuture<RpcClient> connection = clients.get(address);
+            if (connection == null) {
+                CompletableFuture<RpcClient> connecting = new CompletableFuture<>();
+                connection = clients.putIfAbsent(address, connecting);
+                if (connection == null) {
+                    connection = connecting;
+                    connect(provider, connecting);
+                }
+            }
+            RpcClient client = await(address, connection);
+            if (client.isActive()) {
+                return client;
+            }
+            // the connection was lost, the first caller noticing it connects again
+            if (clients.remove(address, connection)) {
+                client.close();
+            }
+        }
+    }
+
+    /**
+     * connect in the calling thread and complete the future with the client, or with the failure
+     */
+    private void connect(Provider provider, CompletableFuture<RpcClient> connecting) throws InterruptedException {
+        String address = provider.getAddress();
+        try {
+            EventLoopGroup group = eventLoopGroup();
+            String unixSocket = unixSocketOf(provider, group);
+            RpcClient client = new RpcClient(provider.getHost(), provider.getPort(), unixSocket, group, maxFrameLength, compressThreshold);
+            client.setBatching(batchMaxDelayMicros, batchMaxSize);
+            client.setConnectTimeoutMillis(connectTimeoutMillis);
+            client.connect();
+            connecting.complete(client);
+            LOGGER.info("connect server: {}{}", address, unixSocket != null ? " through " + unixSocket : "");
+        } catch (Throwable e) {
+            // removed first, so that the waiting callers that retry connect again
+            clients.remove(address, connecting);
+            connecting.completeExceptionally(e);
+            if (e instanceof InterruptedException) {
+                throw (InterruptedException) e;
+            }
+        }
+    }
+
+    private static RpcClient await(String address, CompletableFuture<RpcClient> connection) throws InterruptedException {
+        try {
+            return connection.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            // e.g. ConnectException
+            throw new RuntimeException(String.format("cannot connect server %s", address), cause);
+        }
+    }
+
+    private synchronized EventLoopGroup eventLoopGroup() {
+        if (group == null) {
+            boolean epoll = nativeTransport && Transports.isEpollAvailable();
+            if (nativeTransport && !epoll) {
+                LOGGER.warn("native transport is not available, use NIO: {}", String.valueOf(Transports.epollUnavailabilityCause()));
+            }
+            group = Transports.newEventLoopGroup(epoll, 0);
+        }
+        return group;
+    }
+
+    /**
+     * @return the Unix domain socket of the provider if it runs on this host and it can be used, otherwise null
+     */
+    private String unixSocketOf(Provider provider, EventLoopGroup group) {
+        String path = provider.getUnixSocket();
+        if (path.isEmpty() || !Transports.isEpoll(group) || !isLocal(provider.getHost()) || !Files.exists(Path.of(path))) {
+            return null;
+        }
+        return path;
+    }
+
+    private boolean isLocal(String host) {
+        Set<String> addresses = localAddresses;
+        if (addresses == null) {
+            addresses = new HashSet<>();
+            addresses.add("localhost");
+            try {
+                addresses.add(InetAddress.getLocalHost().getHostName());
+                for (NetworkInterface networkInterface : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+                    for (InetAddress inetAddress : Collections.list(networkInterface.getInetAddresses())) {
+                        String hostAddress = inetAddress.getHostAddress();
+                        // without the scope of IPv6 addresses (fe80::1%lo)
+                        int scope = hostAddress.indexOf('%');
+                        addresses.add(scope < 0 ? hostAddress : hostAddress.substring(0, scope));
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.warn("cannot list the addresses of this host: {}", e.toString());
+            }
+            localAddresses = addresses;
+        }
+        return addresses.contains(host);
+    }
+
+    /**
+     * use Netty's native epoll transport instead of NIO (Linux only, NIO is used if it is not available),
+     * and connect the servers on this host that listen on a Unix domain socket through it
+     * must be called before the first connection
+     * @param nativeTransport
+     */
+    public synchronized void setNativeTransport(boolean nativeTransport) {
+        if (group != null) {
+            throw new IllegalStateException("the transport must be chosen before the first connection");
+        }
+        this.nativeTransport = nativeTransport;
+    }
+
+    /**
+     * applies to connections created afterwards
+     * @param connectTimeoutMillis
+     */
+    public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    /**
+     * applies to connections created afterwards
+     * @param maxFrameLength
+     */
+    public void setMaxFrameLength(int maxFrameLength) {
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    /**
+     * applies to connections created afterwards
+     * @param compressThreshold
+     */
+    public void setCompressThreshold(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
+    /**
+     * pack small concurrent requests to the same server into batch frames, applies to connections created afterwards
+     * @param maxDelayMicros the longest a request waits for others to join its batch, 0 batches only the requests
+     *                       already queued on the event loop without waiting
+     * @param maxBatchSize the most requests in one batch, 1 or less disables batching
+     */
+    public void setBatching(int maxDelayMicros, int maxBatchSize) {
+        this.batchMaxDelayMicros = maxDelayMicros;
+        this.batchMaxSize = maxBatchSize;
+    }
+
+    /**
+     * close all connections and release the event loop group, a later call connects again with a new one
+     */
+    public void shutdown() {
+        for (CompletableFuture<RpcClient> connection : clients.values()) {
+            // also the connections still being established, once they are
+            connection.thenAccept(RpcClient::close);
+        }
+        clients.clear();
+        synchronized (this) {
+            if (group != null) {
+                group.shutdownGracefully();
+                group = null;
+            }
+        }
+    }
+}
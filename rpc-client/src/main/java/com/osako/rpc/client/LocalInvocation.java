@@ -0,0 +1,25 @@
+package com.osako.rpc.client;
+
+/**
+ * How a proxy calls a provider exposed by an RpcServer of the same JVM (see LocalRegistry)
+ */
+public enum LocalInvocation {
+
+    /**
+     * always send requests, even to a provider in the same JVM
+     */
+    DISABLED,
+
+    /**
+     * call the service object directly with copies of the arguments and return a copy of the result,
+     * made with the proxy's serializer, so caller and service see the same values as in a remote call
+     * (immutable values like strings and boxed primitives are not copied)
+     */
+    COPY,
+
+    /**
+     * call the service object directly with the caller's arguments and return its result as it is, the fastest,
+     * but changes of either side to the shared objects are visible to the other
+     */
+    REFERENCE
+}
@@ -0,0 +1,117 @@
+package com.osako.rpc.client;
+
+import com.osako.annotation.Cacheable;
+import com.osako.annotation.CircuitBreaker;
+import com.osako.annotation.Hedged;
+import com.osako.annotation.Idempotent;
+import com.osako.annotation.SingleFlight;
+import com.osako.entity.RpcResponse;
+import com.osako.metrics.MethodMetrics;
+import com.osako.rpc.registry.Provider;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fault tolerance settings of one method of a service interface, read once from its annotations
+ * (@Idempotent, @Hedged, @CircuitBreaker, @Cacheable, @SingleFlight), together with the call metrics of the method
+ */
+final class MethodPolicy {
+
+    // the hedge delay is recomputed from the latency histogram at most this often
+    private static final long HEDGE_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    // calls needed before the latency percentile is trusted, hedging starts afterwards
+    private static final long HEDGE_MIN_CALLS = 100;
+
+    private final String signature;
+    private final MethodMetrics metrics;
+    // retries on other providers after a transport failure, 0 for methods that are not idempotent
+    private final int retries;
+    // latency percentile after which a hedged request is sent, 0 means no hedging
+    private final double hedgePercentile;
+    // null means no circuit breaker
+    private final CircuitBreaker breakerConfig;
+    // results of the method, null if it is not @Cacheable
+    private final ResultCache cache;
+    // arguments -> response of the call in flight, null if the method is not @SingleFlight
+    private final Map<CallKey, CompletableFuture<RpcResponse>> flights;
+
+    private volatile long hedgeDelayNanos;
+    private volatile long hedgeRefreshNanos = System.nanoTime() - HEDGE_REFRESH_NANOS;
+
+    /**
+     * check the annotations of the methods of a service interface when its proxy is created
+     * @throws IllegalArgumentException if a method is @Hedged but not @Idempotent, it could run on two providers
+     */
+    static void validate(Class<?> interfaceClass) {
+        for (Method method : interfaceClass.getMethods()) {
+            if (method.isAnnotationPresent(Hedged.class) && !method.isAnnotationPresent(Idempotent.class)) {
+                throw new IllegalArgumentException(String.format("@Hedged method %s.%s must be @Idempotent",
+                        interfaceClass.getName(), method.getName()));
+            }
+        }
+    }
+
+    MethodPolicy(Method method, String signature, MethodMetrics metrics) {
+        this.signature = signature;
+        this.metrics = metrics;
+        Idempotent idempotent = method.getAnnotation(Idempotent.class);
+        this.retries = idempotent != null ? Math.max(idempotent.retries(), 0) : 0;
+        Hedged hedged = method.getAnnotation(Hedged.class);
+        // only idempotent methods are hedged (see validate())
+        this.hedgePercentile = hedged != null && idempotent != null ? hedged.percentile() : 0;
+        this.breakerConfig = method.getAnnotation(CircuitBreaker.class);
+        Cacheable cacheable = method.getAnnotation(Cacheable.class);
+        this.cache = cacheable != null ? ResultCache.of(signature, cacheable) : null;
+        this.flights = method.isAnnotationPresent(SingleFlight.class) ? new ConcurrentHashMap<>() : null;
+    }
+
+    MethodMetrics getMetrics() {
+        return metrics;
+    }
+
+    ResultCache getCache() {
+        return cache;
+    }
+
+    /**
+     * @return the calls in flight by their arguments, null if identical calls are not coalesced
+     */
+    Map<CallKey, CompletableFuture<RpcResponse>> getFlights() {
+        return flights;
+    }
+
+    int getRetries() {
+        return retries;
+    }
+
+    boolean hasBreaker() {
+        return breakerConfig != null;
+    }
+
+    /**
+     * @return the circuit breaker of the method on the provider, null if the method has none
+     */
+    ProviderCircuitBreaker breaker(Provider provider) {
+        return breakerConfig != null ? ProviderCircuitBreaker.of(provider.getAddress(), signature, breakerConfig) : null;
+    }
+
+    /**
+     * @return how long to wait for the first provider before sending the hedged request, 0 means do not hedge
+     */
+    long getHedgeDelayNanos() {
+        if (hedgePercentile <= 0) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        if (now - hedgeRefreshNanos >= HEDGE_REFRESH_NANOS) {
+            hedgeRefreshNanos = now;
+            hedgeDelayNanos = metrics.getCalls() >= HEDGE_MIN_CALLS ? metrics.getLatencyAtPercentile(hedgePercentile) : 0;
+        }
+        return hedgeDelayNanos;
+    }
+}
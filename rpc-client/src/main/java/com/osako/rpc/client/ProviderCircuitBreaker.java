@@ -0,0 +1,176 @@
+package com.osako.rpc.client;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.osako.annotation.CircuitBreaker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breaker of one method on one provider, configured by the @CircuitBreaker of the method
+ * Closed: calls go through and their outcomes fill a count based sliding window, too many failed or slow calls open it
+ * Open: the provider is skipped until openMillis have passed, then the breaker is half open
+ * Half open: a single probe call goes through, its success closes the breaker and its failure opens it again,
+ * the results of calls sent before the breaker opened are ignored
+ * Breakers of providers no longer selected (e.g. gone from discovery) are evicted after a while
+ */
+final class ProviderCircuitBreaker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProviderCircuitBreaker.class);
+
+    // provider address (host:port) + "/" + method signature -> breaker, shared by all proxies of the method,
+    // read on every selection of a provider for the method
+    private static final Cache<String, ProviderCircuitBreaker> BREAKERS = Caffeine.newBuilder()
+            .expireAfterAccess(10, TimeUnit.MINUTES)
+            .maximumSize(65536)
+            .build();
+
+    private static final byte SUCCESS = 0;
+    private static final byte FAILURE = 1;
+    private static final byte SLOW = 2;
+
+    private enum State { CLOSED, OPEN, HALF_OPEN }
+
+    // permits of tryAcquire() other than the token of a probe
+    static final long DENIED = -1;
+    static final long PERMITTED = 0;
+
+    private final String name;
+    private final int failureRateThreshold;
+    private final long slowCallNanos;
+    private final int slowCallRateThreshold;
+    private final long openNanos;
+
+    // outcomes of the most recent calls, a ring buffer
+    private final byte[] window;
+    private int size;
+    private int next;
+    private int failures;
+    private int slowCalls;
+
+    private volatile State state = State.CLOSED;
+    private long openUntilNanos;
+    private boolean probing;
+    // token of the latest probe, only its result decides the half open state
+    private long probe;
+
+    private ProviderCircuitBreaker(String name, CircuitBreaker config) {
+        this.name = name;
+        this.failureRateThreshold = config.failureRateThreshold();
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(config.slowCallMillis());
+        this.slowCallRateThreshold = config.slowCallRateThreshold();
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(config.openMillis());
+        this.window = new byte[Math.max(config.windowSize(), 1)];
+    }
+
+    static ProviderCircuitBreaker of(String address, String signature, CircuitBreaker config) {
+        String name = address + "/" + signature;
+        ProviderCircuitBreaker breaker = BREAKERS.getIfPresent(name);
+        return breaker != null ? breaker : BREAKERS.get(name, key -> new ProviderCircuitBreaker(key, config));
+    }
+
+    /**
+     * @return whether a call may be sent to the provider now, does not change the state
+     */
+    boolean isAvailable() {
+        State state = this.state;
+        if (state == State.CLOSED) {
+            return true;
+        }
+        synchronized (this) {
+            return this.state == State.CLOSED
+                    || (this.state == State.OPEN && System.nanoTime() - openUntilNanos >= 0)
+                    || (this.state == State.HALF_OPEN && !probing);
+        }
+    }
+
+    /**
+     * take the permission to send a call to the provider, in the half open state only one call gets it
+     * @return DENIED if the call must not be sent, otherwise the permit to pass to onResult()
+     */
+    long tryAcquire() {
+        if (state == State.CLOSED) {
+            return PERMITTED;
+        }
+        synchronized (this) {
+            if (state == State.OPEN && System.nanoTime() - openUntilNanos >= 0) {
+                state = State.HALF_OPEN;
+                probing = false;
+            }
+            if (state == State.HALF_OPEN && !probing) {
+                probing = true;
+                return ++probe;
+            }
+            return state == State.CLOSED ? PERMITTED : DENIED;
+        }
+    }
+
+    /**
+     * record the outcome of a call that was let through
+     * @param permit returned by tryAcquire() for the call
+     * @param latencyNanos
+     * @param failed transport failure, timeout or overloaded answer
+     */
+    synchronized void onResult(long permit, long latencyNanos, boolean failed) {
+        byte outcome = failed ? FAILURE : slowCallNanos > 0 && latencyNanos > slowCallNanos ? SLOW : SUCCESS;
+        if (state == State.HALF_OPEN) {
+            if (!probing || permit != probe) {
+                // a call sent before the breaker opened, not the probe
+                return;
+            }
+            probing = false;
+            if (outcome == SUCCESS) {
+                reset();
+                state = State.CLOSED;
+                LOGGER.info("circuit breaker {} is closed", name);
+            } else {
+                open();
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            // a call sent before the breaker opened
+            return;
+        }
+        if (size == window.length) {
+            evict(window[next]);
+        } else {
+            size++;
+        }
+        window[next] = outcome;
+        next = (next + 1) % window.length;
+        if (outcome == FAILURE) {
+            failures++;
+        } else if (outcome == SLOW) {
+            slowCalls++;
+        }
+        if (size == window.length && (failures * 100 >= failureRateThreshold * size
+                || (slowCallNanos > 0 && slowCalls * 100 >= slowCallRateThreshold * size))) {
+            open();
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openUntilNanos = System.nanoTime() + openNanos;
+        reset();
+        LOGGER.warn("circuit breaker {} is open", name);
+    }
+
+    private void evict(byte outcome) {
+        if (outcome == FAILURE) {
+            failures--;
+        } else if (outcome == SLOW) {
+            slowCalls--;
+        }
+    }
+
+    private void reset() {
+        size = 0;
+        next = 0;
+        failures = 0;
+        slowCalls = 0;
+    }
+}
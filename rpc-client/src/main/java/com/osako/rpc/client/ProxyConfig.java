@@ -0,0 +1,77 @@
+package com.osako.rpc.client;
+
+import com.osako.compress.Compressor;
+import com.osako.rpc.client.loadbalance.LoadBalancer;
+import com.osako.serializer.Serializer;
+
+/**
+ * Per service proxy options, passed to RpcProxy.create(interfaceClass, config)
+ * Options that are not set fall back to the defaults of the RpcProxy
+ */
+public class ProxyConfig {
+
+    // 服务版本号，默认为 ""
+    private String serviceVersion = "";
+
+    private LoadBalancer loadBalancer;
+
+    // 序列化方式，服务端使用同样的方式序列化响应
+    private Serializer serializer;
+
+    // 压缩方式，超过阈值的请求 / 响应体被压缩，默认不压缩
+    private Compressor compressor;
+
+    // 调用超时时间（毫秒），null 表示使用 RpcProxy 的默认值，方法上的 @Timeout 优先
+    private Long timeoutMillis;
+
+    // 调用同一 JVM 中的服务提供者的方式，null 表示使用 RpcProxy 的默认值
+    private LocalInvocation localInvocation;
+
+    public String getServiceVersion() {
+        return serviceVersion;
+    }
+
+    public void setServiceVersion(String serviceVersion) {
+        this.serviceVersion = serviceVersion;
+    }
+
+    public LoadBalancer getLoadBalancer() {
+        return loadBalancer;
+    }
+
+    public void setLoadBalancer(LoadBalancer loadBalancer) {
+        this.loadBalancer = loadBalancer;
+    }
+
+    public Serializer getSerializer() {
+        return serializer;
+    }
+
+    public void setSerializer(Serializer serializer) {
+        this.serializer = serializer;
+    }
+
+    public Compressor getCompressor() {
+        return compressor;
+    }
+
+    public void setCompressor(Compressor compressor) {
+        this.compressor = compressor;
+    }
+
+    public Long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public void setTimeoutMillis(Long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public LocalInvocation getLocalInvocation() {
+        return localInvocation;
+    }
+
+    public void setLocalInvocation(LocalInvocation localInvocation) {
+        this.localInvocation = localInvocation;
+    }
+}
@@ -0,0 +1,109 @@
+package com.osako.rpc.client;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.osako.annotation.Cacheable;
+import com.osako.entity.RpcResponse;
+import com.osako.metrics.MetricsRegistry;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client side cache of the results of a @Cacheable method, keyed by the call arguments
+ * Bounded Caffeine cache (W-TinyLFU eviction) with expiry after write, one per method signature shared by all
+ * proxies of the method, registered as an MBean next to the client metrics of the method
+ */
+public final class ResultCache implements ResultCacheMBean {
+
+    // method signature -> cache
+    private static final Map<String, ResultCache> CACHES = new ConcurrentHashMap<>();
+
+    // Caffeine does not store null values
+    private static final Object NULL = new Object();
+
+    private final String signature;
+    private final Cache<CallKey, Object> cache;
+
+    private ResultCache(String signature, Cacheable config) {
+        this.signature = signature;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(config.maxSize())
+                .expireAfterWrite(config.ttlMillis(), TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+    }
+
+    static ResultCache of(String signature, Cacheable config) {
+        ResultCache cache = CACHES.get(signature);
+        if (cache == null) {
+            cache = CACHES.computeIfAbsent(signature, key -> {
+                ResultCache created = new ResultCache(key, config);
+                MetricsRegistry.client().registerMBean("ResultCache", key, created);
+                return created;
+            });
+        }
+        return cache;
+    }
+
+    /**
+     * @return the caches of all @Cacheable methods called so far
+     */
+    public static Collection<ResultCache> all() {
+        return Collections.unmodifiableCollection(CACHES.values());
+    }
+
+    /**
+     * @param args
+     * @return a response holding the cached result of the call, null on a miss
+     */
+    RpcResponse get(Object[] args) {
+        Object result = cache.getIfPresent(new CallKey(args));
+        if (result == null) {
+            return null;
+        }
+        RpcResponse response = new RpcResponse();
+        response.setResult(result == NULL ? null : result);
+        return response;
+    }
+
+    void put(Object[] args, Object result) {
+        cache.put(new CallKey(args), result == null ? NULL : result);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public String getSignature() {
+        return signature;
+    }
+
+    @Override
+    public long getHitCount() {
+        return cache.stats().hitCount();
+    }
+
+    @Override
+    public long getMissCount() {
+        return cache.stats().missCount();
+    }
+
+    @Override
+    public double getHitRate() {
+        return cache.stats().hitRate();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return cache.stats().evictionCount();
+    }
+
+    @Override
+    public long getSize() {
+        return cache.estimatedSize();
+    }
+}
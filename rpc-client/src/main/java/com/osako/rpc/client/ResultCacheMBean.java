@@ -0,0 +1,17 @@
+package com.osako.rpc.client;
+
+/**
+ * JMX view of the result cache of a @Cacheable method
+ */
+public interface ResultCacheMBean {
+
+    long getHitCount();
+
+    long getMissCount();
+
+    double getHitRate();
+
+    long getEvictionCount();
+
+    long getSize();
+}
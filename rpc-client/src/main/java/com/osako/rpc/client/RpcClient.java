@@ -1,19 +1,42 @@
 package com.osako.rpc.client;
 
+import com.osako.codec.BatchSplitter;
+import com.osako.codec.BatchWriter;
 import com.osako.codec.RpcDecoder;
 import com.osako.codec.RpcEncoder;
+import com.osako.entity.Heartbeat;
+import com.osako.entity.MessageType;
 import com.osako.entity.RpcRequest;
 import com.osako.entity.RpcResponse;
+import com.osako.exception.RpcOverloadedException;
+import com.osako.exception.RpcTimeoutException;
+import com.osako.metrics.MetricsRegistry;
+import com.osako.transport.Transports;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.channel.unix.DomainSocketAddress;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.handler.timeout.IdleState;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
- * RPC client (establish connection, send RPC request, receive RPC response)
+ * RPC client, one long-lived connection to a single server (send RPC request, receive RPC response)
+ * Many requests can be in flight on the channel at the same time, responses are matched back to
+ * their callers by requestId through the pending-request table, requestIds are assigned from a per-connection counter
+ * Right after connecting the client asks the server for its method id dictionary (handshake), afterwards requests
+ * of known methods only carry the method id instead of interface / method / parameter type names
  */
 public class RpcClient extends SimpleChannelInboundHandler<RpcResponse> {
 
@@ -21,23 +44,153 @@ public class RpcClient extends SimpleChannelInboundHandler<RpcResponse> {
 
     private final String host;
     private final int port;
+    // path of the server's Unix domain socket to connect to instead of host:port, null for TCP
+    private final String unixSocket;
+    private final EventLoopGroup group;
+    private final int maxFrameLength;
+    private final int compressThreshold;
+
+    // requestId -> future of the caller waiting for that response
+    private final Map<Long, CompletableFuture<RpcResponse>> pendingRequests = new ConcurrentHashMap<>();
+
+    // requestId -> streaming call receiving the elements of that request
+    private final Map<Long, StreamCall> streams = new ConcurrentHashMap<>();
+
+    // only has to be unique among the requests in flight on this connection
+    private final AtomicLong nextRequestId = new AtomicLong();
+
+    private volatile Channel channel;
+
+    // a connect that takes longer fails, 0 uses the default of Netty
+    private int connectTimeoutMillis;
+
+    // batching of concurrent requests, disabled when maxBatchSize <= 1
+    private int batchMaxDelayMicros;
+    private int batchMaxSize;
+    private volatile BatchWriter batchWriter;
 
-    private RpcResponse response;
+    // method signature -> id, from the handshake response of the server, empty until it arrives
+    private volatile Map<String, Integer> methodIds = Collections.emptyMap();
 
-    public RpcClient(String host, int port) {
+    public RpcClient(String host, int port, EventLoopGroup group, int maxFrameLength, int compressThreshold) {
+        this(host, port, null, group, maxFrameLength, compressThreshold);
+    }
+
+    /**
+     * @param unixSocket path of the server's Unix domain socket, null to connect to host:port,
+     *                   a Unix domain socket needs an epoll event loop group
+     */
+    public RpcClient(String host, int port, String unixSocket, EventLoopGroup group, int maxFrameLength,
+                     int compressThreshold) {
         this.host = host;
         this.port = port;
+        this.unixSocket = unixSocket;
+        this.group = group;
+        this.maxFrameLength = maxFrameLength;
+        this.compressThreshold = compressThreshold;
     }
 
     /**
-     * Process RpcResponse sent from server
+     * Process RpcResponse sent from server, complete the future of the matching request
      * @param channelHandlerContext
      * @param response
      * @throws Exception
      */
     @Override
     protected void channelRead0(ChannelHandlerContext channelHandlerContext, RpcResponse response) throws Exception {
-        this.response = response;
+        if (response.isHeartbeat()) {
+            // pong, the read itself has already reset the idle timer
+            return;
+        }
+        if (response.getMessageType() == MessageType.HANDSHAKE) {
+            handleHandshake(response);
+            return;
+        }
+        if (response.getMessageType() == MessageType.STREAM) {
+            StreamCall stream = streams.get(response.getRequestId());
+            if (stream != null) {
+                stream.onElement(response.getResult());
+            }
+            return;
+        }
+        if (response.getMessageType() == MessageType.STREAM_END) {
+            StreamCall stream = streams.remove(response.getRequestId());
+            if (stream != null) {
+                stream.onEnd(response.getException());
+            }
+            return;
+        }
+        if (response.getMessageType() == MessageType.OVERLOADED) {
+            // the server did not process the request, the caller may retry on another provider
+            response.setException(new RpcOverloadedException(String.format("server %s:%d is overloaded", host, port)));
+        }
+        CompletableFuture<RpcResponse> future = pendingRequests.remove(response.getRequestId());
+        StreamCall stream;
+        if (future != null) {
+            future.complete(response);
+        } else if ((stream = streams.remove(response.getRequestId())) != null) {
+            // a streaming call that failed before the server could start the stream
+            stream.onEnd(response.getException());
+        } else {
+            // the request has timed out (or was never sent by this client)
+            LOGGER.debug("discard response of unknown request: {}", response.getRequestId());
+        }
+    }
+
+    /**
+     * Be called by the IdleStateHandler: ping the server when the connection is quiet,
+     * drop the connection when the server has not answered anything for too long
+     * @param ctx
+     * @param evt
+     * @throws Exception
+     */
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof IdleStateEvent) {
+            IdleState state = ((IdleStateEvent) evt).state();
+            if (state == IdleState.WRITER_IDLE) {
+                ctx.writeAndFlush(Heartbeat.ping());
+            } else if (state == IdleState.READER_IDLE) {
+                LOGGER.warn("server {}:{} is not responding, close the connection", host, port);
+                ctx.close();
+            }
+        } else {
+            super.userEventTriggered(ctx, evt);
+        }
+    }
+
+    /**
+     * Be called when the connection is established, start the handshake
+     * @param ctx
+     * @throws Exception
+     */
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        RpcRequest handshake = new RpcRequest();
+        handshake.setMessageType(MessageType.HANDSHAKE);
+        handshake.setRequestId(nextRequestId.incrementAndGet());
+        ctx.writeAndFlush(handshake);
+        MetricsRegistry.client().connectionOpened();
+        super.channelActive(ctx);
+    }
+
+    /**
+     * Be called when the connection is closed, nobody will answer the pending requests any more
+     * @param ctx
+     * @throws Exception
+     */
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        MetricsRegistry.client().connectionClosed();
+        RuntimeException cause = new RuntimeException(String.format("connection to %s:%d is closed", host, port));
+        failPendingRequests(cause);
+        for (Long requestId : streams.keySet()) {
+            StreamCall stream = streams.remove(requestId);
+            if (stream != null) {
+                stream.onEnd(cause);
+            }
+        }
+        super.channelInactive(ctx);
     }
 
     /**
@@ -53,40 +206,229 @@ public class RpcClient extends SimpleChannelInboundHandler<RpcResponse> {
     }
 
     /**
-     * establish connection, send request, receive response
+     * establish connection to the server, the channel is kept open until close() is called
+     *
+     * @throws InterruptedException
+     */
+    public void connect() throws InterruptedException {
+        //Create and initialise Netty client side Bootstrap object
+        Bootstrap bootstrap = new Bootstrap();
+        bootstrap.group(group);
+        if (connectTimeoutMillis > 0) {
+            bootstrap.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMillis);
+        }
+        // NIO or epoll, following the event loop group
+        bootstrap.channel(unixSocket != null ? Transports.domainSocketChannelClass() : Transports.channelClass(group));
+        bootstrap.handler(new ChannelInitializer<Channel>() {
+            @Override
+            public void initChannel(Channel channel) throws Exception {
+                ChannelPipeline pipeline = channel.pipeline();
+                // merge the flushes of writes issued close together into one syscall
+                pipeline.addLast(new FlushConsolidationHandler(FlushConsolidationHandler.DEFAULT_EXPLICIT_FLUSH_AFTER_FLUSHES, true));
+                pipeline.addLast(new IdleStateHandler(Heartbeat.IDLE_TIMEOUT_SECONDS, Heartbeat.PING_INTERVAL_SECONDS, 0));
+                pipeline.addLast(new RpcEncoder(RpcRequest.class, compressThreshold));  // encode RPC request
+                pipeline.addLast(new RpcDecoder(RpcResponse.class, maxFrameLength)); // decode RPC response
+                pipeline.addLast(new BatchSplitter()); // split batched responses
+                pipeline.addLast(RpcClient.this); // process RPC Response
+            }
+        });
+        if (unixSocket != null) {
+            // Connect RPC server on the same host, bypassing the TCP/IP stack
+            channel = bootstrap.connect(new DomainSocketAddress(unixSocket)).sync().channel();
+        } else {
+            bootstrap.option(ChannelOption.TCP_NODELAY, true); // disable Nagle, requests are small and latency sensitive
+            // Connect RPC server
+            channel = bootstrap.connect(host, port).sync().channel();
+        }
+        if (batchMaxSize > 1) {
+            batchWriter = new BatchWriter(channel, batchMaxDelayMicros, batchMaxSize);
+        }
+    }
+
+    /**
+     * pack requests sent within maxDelayMicros into one batch frame of at most maxBatchSize requests,
+     * must be called before connect()
+     *
+     * @param maxDelayMicros the longest a request waits for others to join its batch
+     * @param maxBatchSize a batch is written as soon as it holds this many requests, 1 or less disables batching
+     */
+    public void setBatching(int maxDelayMicros, int maxBatchSize) {
+        this.batchMaxDelayMicros = maxDelayMicros;
+        this.batchMaxSize = maxBatchSize;
+    }
+
+    /**
+     * fail connect() when the connection is not established within connectTimeoutMillis, must be called before connect()
+     *
+     * @param connectTimeoutMillis 0 or less keeps the default of Netty
+     */
+    public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    /**
+     * id of the method in the dictionary of the server
+     *
+     * @param signature see MethodSignature
+     * @return the id, 0 if the handshake has not completed yet or the server does not know the method
+     */
+    public int getMethodId(String signature) {
+        Integer methodId = methodIds.get(signature);
+        return methodId == null ? 0 : methodId;
+    }
+
+    public boolean isActive() {
+        Channel channel = this.channel;
+        return channel != null && channel.isActive();
+    }
+
+    /**
+     * send request without waiting, the returned future is completed when the matching response arrives,
+     * or fails with RpcTimeoutException when the timeout of the request passes first
+     *
+     * @param request
+     * @return
+     */
+    public CompletableFuture<RpcResponse> sendAsync(RpcRequest request) {
+        CompletableFuture<RpcResponse> future = new CompletableFuture<>();
+        long requestId = nextRequestId.incrementAndGet();
+        request.setRequestId(requestId);
+        pendingRequests.put(requestId, future);
+        if (request.getTimeoutMillis() > 0) {
+            scheduleTimeout(requestId, future, request.getTimeoutMillis());
+        }
+        write(request).addListener((ChannelFutureListener) writeFuture -> {
+            if (!writeFuture.isSuccess()) {
+                pendingRequests.remove(requestId);
+                future.completeExceptionally(writeFuture.cause());
+            }
+        });
+        return future;
+    }
+
+    /**
+     * fail the request when its timeout passes, the timer runs on the event loop of the connection
+     * and is cancelled as soon as the request completes
+     */
+    private void scheduleTimeout(long requestId, CompletableFuture<RpcResponse> future, long delay) {
+        ScheduledFuture<?> timeout = channel.eventLoop().schedule(() -> {
+            if (pendingRequests.remove(requestId) != null) {
+                future.completeExceptionally(new RpcTimeoutException(
+                        String.format("request %d to %s:%d timed out", requestId, host, port)));
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+        future.whenComplete((response, cause) -> timeout.cancel(false));
+    }
+
+    /**
+     * send request that the server does not answer, the returned future is completed once the request is written
+     *
+     * @param request
+     * @return
+     */
+    public CompletableFuture<Void> sendOneWay(RpcRequest request) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        request.setRequestId(nextRequestId.incrementAndGet());
+        request.setMessageType(MessageType.ONE_WAY);
+        write(request).addListener((ChannelFutureListener) writeFuture -> {
+            if (writeFuture.isSuccess()) {
+                future.complete(null);
+            } else {
+                future.completeExceptionally(writeFuture.cause());
+            }
+        });
+        return future;
+    }
+
+    /**
+     * send request of a method returning a stream, the elements are received by the returned call as they arrive
+     *
+     * @param request
+     * @return
+     */
+    StreamCall sendStream(RpcRequest request) {
+        StreamCall stream = new StreamCall(this);
+        long requestId = nextRequestId.incrementAndGet();
+        request.setRequestId(requestId);
+        stream.setRequestId(requestId);
+        streams.put(requestId, stream);
+        write(request).addListener((ChannelFutureListener) writeFuture -> {
+            if (!writeFuture.isSuccess() && streams.remove(requestId) != null) {
+                stream.onEnd(writeFuture.cause());
+            }
+        });
+        return stream;
+    }
+
+    /**
+     * grant the server credit for more elements of the stream
+     */
+    void sendCredit(long requestId, int credit) {
+        RpcRequest request = new RpcRequest();
+        request.setMessageType(MessageType.CREDIT);
+        request.setRequestId(requestId);
+        request.setParameters(new Object[]{credit});
+        channel.writeAndFlush(request);
+    }
+
+    /**
+     * tell the server to stop sending the stream
+     */
+    void cancelStream(long requestId) {
+        if (streams.remove(requestId) == null) {
+            // already ended
+            return;
+        }
+        RpcRequest request = new RpcRequest();
+        request.setMessageType(MessageType.CANCEL);
+        request.setRequestId(requestId);
+        channel.writeAndFlush(request);
+    }
+
+    /**
+     * send request, block until its response arrives
      *
      * @param request
      * @return
      * @throws InterruptedException
      */
     public RpcResponse send(RpcRequest request) throws InterruptedException {
-        EventLoopGroup group = new NioEventLoopGroup();
         try {
-            //Create and initialise Netty client side Bootstrap object
-            Bootstrap bootstrap = new Bootstrap();
-            bootstrap.group(group);
-            bootstrap.channel(NioSocketChannel.class);
-            bootstrap.handler(new ChannelInitializer<SocketChannel>() {
-                @Override
-                public void initChannel(SocketChannel channel) throws Exception {
-                    ChannelPipeline pipeline = channel.pipeline();
-                    pipeline.addLast(new RpcEncoder(RpcRequest.class));  // encode RPC request
-                    pipeline.addLast(new RpcDecoder(RpcResponse.class)); // decode RPC response
-                    pipeline.addLast(RpcClient.this); // process RPC Response
-                }
-            });
-            bootstrap.option(ChannelOption.TCP_NODELAY, true); // ?
-            // Connect RPC server
-            ChannelFuture future = bootstrap.connect(host, port).sync();
-            // write RPC request and close the connection
-            Channel channel = future.channel();
-            channel.writeAndFlush(request).sync();
-            channel.closeFuture().sync();
-            return response;
-        } finally {
-            group.shutdownGracefully();
+            return sendAsync(request).get();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    public void close() {
+        Channel channel = this.channel;
+        if (channel != null) {
+            channel.close();
         }
     }
 
+    private ChannelFuture write(RpcRequest request) {
+        BatchWriter batchWriter = this.batchWriter;
+        return batchWriter != null ? batchWriter.write(request) : channel.writeAndFlush(request);
+    }
 
+    @SuppressWarnings("unchecked")
+    private void handleHandshake(RpcResponse response) {
+        if (response.hasException() || !(response.getResult() instanceof Map)) {
+            // keep sending full names
+            LOGGER.warn("handshake with {}:{} failed", host, port, response.getException());
+            return;
+        }
+        methodIds = Map.copyOf((Map<String, Integer>) response.getResult());
+        LOGGER.debug("handshake with {}:{}, {} methods", host, port, methodIds.size());
+    }
+
+    private void failPendingRequests(Throwable cause) {
+        for (Long requestId : pendingRequests.keySet()) {
+            CompletableFuture<RpcResponse> future = pendingRequests.remove(requestId);
+            if (future != null) {
+                future.completeExceptionally(cause);
+            }
+        }
+    }
 }
@@ -0,0 +1,715 @@
+package com.osako.rpc.client;
+
+import com.osako.annotation.OneWay;
+import com.osako.annotation.Timeout;
+import com.osako.compress.Compressor;
+import com.osako.entity.MethodSignature;
+import com.osako.entity.RpcRequest;
+import com.osako.entity.RpcResponse;
+import com.osako.exception.RpcCircuitOpenException;
+import com.osako.exception.RpcOverloadedException;
+import com.osako.exception.RpcTimeoutException;
+import com.osako.metrics.MethodMetrics;
+import com.osako.metrics.MetricsRegistry;
+import com.osako.rpc.client.loadbalance.LoadBalancer;
+import com.osako.rpc.client.loadbalance.ProviderStats;
+import com.osako.rpc.registry.Provider;
+import com.osako.rpc.registry.local.LocalRegistry;
+import com.osako.serializer.Serializer;
+import com.osako.serializer.Serializers;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Invocation handler behind the proxies created by RpcProxy, turns a method call into an RpcRequest
+ * and sends it through the pooled connection of the discovered server
+ */
+class RpcInvocationHandler implements InvocationHandler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RpcInvocationHandler.class);
+
+    // an overloaded answer is retried on at most this many other providers, whether the method is idempotent or not
+    private static final int MAX_OVERLOADED_RETRIES = 2;
+
+    // set by AsyncProxy.call(), the future of the invoked method is captured here instead of being waited on
+    static final ThreadLocal<CompletableFuture<?>[]> ASYNC_CAPTURE = new ThreadLocal<>();
+
+    private final RpcProxy rpcProxy;
+    private final String serviceVersion;
+    // 服务名称（被暴露的实现类的接口名称）和版本号，即注册中心中的服务节点名称
+    private final String serviceName;
+    private final LoadBalancer loadBalancer;
+    private final byte serializer;
+    private final byte compressor;
+    // timeout of the methods without @Timeout, 0 means none
+    private final long timeoutMillis;
+    // how a provider in the same JVM is called
+    private final LocalInvocation localInvocation;
+    // 没有服务发现组件时，直接使用 RpcProxy 配置的服务地址
+    private final Provider staticProvider;
+    // method -> signature, the key of the method id dictionaries of the servers
+    private final Map<Method, String> signatures = new ConcurrentHashMap<>();
+    // method -> its fault tolerance settings and call metrics
+    private final Map<Method, MethodPolicy> policies = new ConcurrentHashMap<>();
+    // method -> handle calling it on a service object of the same JVM, (Object, Object[])Object
+    private final Map<Method, MethodHandle> localHandles = new ConcurrentHashMap<>();
+
+    RpcInvocationHandler(RpcProxy rpcProxy, Class<?> interfaceClass, ProxyConfig config) {
+        MethodPolicy.validate(interfaceClass);
+        this.rpcProxy = rpcProxy;
+        this.serviceVersion = config.getServiceVersion();
+        this.loadBalancer = config.getLoadBalancer() != null ? config.getLoadBalancer() : rpcProxy.getLoadBalancer();
+        this.serializer = (config.getSerializer() != null ? config.getSerializer() : rpcProxy.getSerializer()).getId();
+        Compressor compressor = config.getCompressor() != null ? config.getCompressor() : rpcProxy.getCompressor();
+        this.compressor = compressor != null ? compressor.getId() : 0;
+        this.timeoutMillis = config.getTimeoutMillis() != null ? config.getTimeoutMillis() : rpcProxy.getTimeoutMillis();
+        this.localInvocation = config.getLocalInvocation() != null ? config.getLocalInvocation() : rpcProxy.getLocalInvocation();
+        String serviceName = interfaceClass.getName();
+        if (serviceVersion != null) {
+            String service_version = serviceVersion.trim();
+            if (!StringUtils.isEmpty(service_version)) {
+                serviceName += "-" + service_version;
+            }
+        }
+        this.serviceName = serviceName;
+        String serviceAddress = rpcProxy.getServiceAddress();
+        this.staticProvider = StringUtils.isBlank(serviceAddress) ? null : Provider.parse(serviceAddress);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (localInvocation != LocalInvocation.DISABLED) {
+            Object serviceBean = LocalRegistry.lookup(serviceName);
+            if (serviceBean != null) {
+                // the provider is exposed in this JVM, call it directly
+                return invokeLocal(serviceBean, method, args);
+            }
+        }
+        CompletableFuture<?>[] captured = ASYNC_CAPTURE.get();
+        if (method.getReturnType() == void.class && method.isAnnotationPresent(OneWay.class)) {
+            // fire-and-forget, nothing to wait for
+            CompletableFuture<Void> sent = sendOneWay(method, args);
+            if (captured != null) {
+                // completed once the request is written
+                captured[0] = sent;
+            }
+            return null;
+        }
+        Class<?> returnType = method.getReturnType();
+        if (returnType == Iterator.class || returnType == Stream.class || returnType == Flow.Publisher.class) {
+            // streaming result, consumed lazily as the elements arrive
+            Object stream = stream(method, args, returnType);
+            if (captured != null) {
+                captured[0] = CompletableFuture.completedFuture(stream);
+            }
+            return stream;
+        }
+        CompletableFuture<RpcResponse> responseFuture = sendOrCached(method, args);
+
+        boolean returnsFuture = CompletionStage.class.isAssignableFrom(method.getReturnType());
+        if (captured != null || returnsFuture) {
+            CompletableFuture<Object> resultFuture = toResultFuture(responseFuture);
+            if (captured != null) {
+                captured[0] = resultFuture;
+            }
+            return returnsFuture ? resultFuture : defaultValue(method.getReturnType());
+        }
+
+        RpcResponse response;
+        try {
+            response = responseFuture.get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+        if (response == null) {
+            throw new RuntimeException("response is null");
+        }
+        // 返回RPC响应结果
+        if (response.hasException()) {
+            throw response.getException();
+        } else {
+            return response.getResult();
+        }
+    }
+
+    /**
+     * call the service object of this JVM, with copies of the arguments and result in COPY mode
+     * Streams and exceptions are passed as they are
+     */
+    private Object invokeLocal(Object serviceBean, Method method, Object[] args) throws Throwable {
+        boolean copy = localInvocation == LocalInvocation.COPY;
+        Object[] arguments = copy ? copyArguments(args) : args;
+        MethodMetrics methodMetrics = metrics(method);
+        CompletableFuture<?>[] captured = ASYNC_CAPTURE.get();
+        if (captured != null) {
+            // proxy calls made by the service object on this thread are its own, they must not be captured
+            ASYNC_CAPTURE.remove();
+        }
+        long time = methodMetrics.begin();
+        Object result;
+        try {
+            result = (Object) localHandle(method).invokeExact(serviceBean, arguments);
+        } catch (Throwable t) {
+            methodMetrics.end(time, true);
+            if (captured != null) {
+                captured[0] = CompletableFuture.failedFuture(t);
+                return defaultValue(method.getReturnType());
+            }
+            throw t;
+        } finally {
+            if (captured != null) {
+                ASYNC_CAPTURE.set(captured);
+            }
+        }
+        if (result instanceof CompletionStage) {
+            CompletableFuture<Object> resultFuture = ((CompletionStage<?>) result)
+                    .thenApply(value -> copy ? copyResult(value) : (Object) value)
+                    .toCompletableFuture();
+            resultFuture.whenComplete((value, cause) -> methodMetrics.end(time, cause != null));
+            if (captured != null) {
+                captured[0] = resultFuture;
+            }
+            return resultFuture;
+        }
+        methodMetrics.end(time, false);
+        Class<?> returnType = method.getReturnType();
+        if (copy && returnType != Iterator.class && returnType != Stream.class && returnType != Flow.Publisher.class) {
+            result = copyResult(result);
+        }
+        if (captured != null) {
+            captured[0] = CompletableFuture.completedFuture(result);
+            return defaultValue(returnType);
+        }
+        return result;
+    }
+
+    private MethodHandle localHandle(Method method) {
+        MethodHandle handle = localHandles.get(method);
+        if (handle == null) {
+            handle = localHandles.computeIfAbsent(method, m -> {
+                try {
+                    // the service interface need not be public
+                    m.setAccessible(true);
+                    return MethodHandles.lookup().unreflect(m)
+                            .asSpreader(Object[].class, m.getParameterCount())
+                            .asType(MethodType.methodType(Object.class, Object.class, Object[].class));
+                } catch (IllegalAccessException e) {
+                    throw new RuntimeException(String.format("cannot call local service method: %s", signature(m)), e);
+                }
+            });
+        }
+        return handle;
+    }
+
+    /**
+     * copies of the arguments made with the proxy's serializer, as the service would receive them in a request
+     */
+    private Object[] copyArguments(Object[] args) {
+        if (args == null || isImmutable(args)) {
+            return args;
+        }
+        RpcRequest request = new RpcRequest();
+        request.setParameters(args);
+        return copy(request, RpcRequest.class).getParameters();
+    }
+
+    private Object copyResult(Object result) {
+        if (isImmutable(result)) {
+            return result;
+        }
+        RpcResponse response = new RpcResponse();
+        response.setResult(result);
+        return copy(response, RpcResponse.class).getResult();
+    }
+
+    private <T> T copy(T message, Class<T> type) {
+        Serializer serializer = Serializers.get(this.serializer);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            serializer.serialize(message, out);
+            return serializer.deserialize(new ByteArrayInputStream(out.toByteArray()), type);
+        } catch (IOException e) {
+            throw new RuntimeException("cannot copy the values of a local call", e);
+        }
+    }
+
+    private static boolean isImmutable(Object[] values) {
+        for (Object value : values) {
+            if (!isImmutable(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isImmutable(Object value) {
+        if (value == null || value instanceof String || value instanceof Boolean || value instanceof Character
+                || value instanceof Enum) {
+            return true;
+        }
+        // boxed primitives, other numbers such as AtomicLong are mutable
+        return value instanceof Number && value.getClass().getPackageName().equals("java.lang");
+    }
+
+    /**
+     * answer the call from the result cache of a @Cacheable method, or join the identical call in flight of a
+     * @SingleFlight method, otherwise send it (and cache its successful result)
+     */
+    private CompletableFuture<RpcResponse> sendOrCached(Method method, Object[] args) throws InterruptedException {
+        MethodPolicy policy = policy(method);
+        ResultCache cache = policy.getCache();
+        Map<CallKey, CompletableFuture<RpcResponse>> flights = policy.getFlights();
+        if (cache == null && flights == null) {
+            return send(method, args);
+        }
+        if (cache != null) {
+            RpcResponse cached = cache.get(args);
+            if (cached != null) {
+                return CompletableFuture.completedFuture(cached);
+            }
+        }
+        CallKey key = null;
+        CompletableFuture<RpcResponse> flight = null;
+        if (flights != null) {
+            key = new CallKey(args);
+            CompletableFuture<RpcResponse> inFlight = flights.get(key);
+            if (inFlight == null) {
+                flight = new CompletableFuture<>();
+                inFlight = flights.putIfAbsent(key, flight);
+            }
+            if (inFlight != null) {
+                // an identical call is in flight, share its outcome
+                return inFlight;
+            }
+        }
+        CompletableFuture<RpcResponse> responseFuture;
+        try {
+            responseFuture = send(method, args);
+        } catch (RuntimeException | InterruptedException e) {
+            if (flight != null) {
+                flights.remove(key, flight);
+                flight.completeExceptionally(e);
+            }
+            throw e;
+        }
+        CallKey flightKey = key;
+        CompletableFuture<RpcResponse> ownFlight = flight;
+        return responseFuture.whenComplete((response, cause) -> {
+            if (cache != null && cause == null && response != null && !response.hasException()) {
+                cache.put(args, response.getResult());
+            }
+            if (ownFlight != null) {
+                // later identical calls send a request of their own again
+                flights.remove(flightKey, ownFlight);
+                if (cause != null) {
+                    ownFlight.completeExceptionally(cause instanceof CompletionException && cause.getCause() != null
+                            ? cause.getCause() : cause);
+                } else {
+                    ownFlight.complete(response);
+                }
+            }
+        });
+    }
+
+    /**
+     * build the request of the method call and send it without waiting for the response
+     */
+    private CompletableFuture<RpcResponse> send(Method method, Object[] args) throws InterruptedException {
+        Timeout timeout = method.getAnnotation(Timeout.class);
+        long timeoutMillis = timeout != null ? timeout.value() : this.timeoutMillis;
+        long deadline = timeoutMillis > 0 ? System.currentTimeMillis() + timeoutMillis : 0;
+        MethodPolicy policy = policy(method);
+        MethodMetrics methodMetrics = policy.getMetrics();
+        long hedgeDelayNanos = policy.getHedgeDelayNanos();
+        long time = methodMetrics.begin();
+        CompletableFuture<RpcResponse> responseFuture;
+        try {
+            responseFuture = hedgeDelayNanos > 0
+                    ? sendHedged(method, args, deadline, policy, hedgeDelayNanos)
+                    : sendTo(method, args, deadline, policy, null, 0);
+            if (responseFuture == null) {
+                throw new RpcCircuitOpenException(String.format("circuit breakers of all providers of %s are open",
+                        signature(method)));
+            }
+        } catch (RuntimeException | InterruptedException e) {
+            methodMetrics.end(time, true);
+            throw e;
+        }
+        return responseFuture.whenComplete((response, cause) ->
+                methodMetrics.end(time, cause != null || response == null || response.hasException()));
+    }
+
+    /**
+     * send the call to a provider that has not been tried yet and whose circuit breaker lets it through
+     * An overloaded answer is retried on another provider, the server has not processed the request so this is safe
+     * for any method; a transport failure is retried on another provider if the method is idempotent
+     * @param tried addresses of the providers already tried for this call, null for the first attempt
+     * @param attempt number of retries before this attempt
+     * @return null if there is no provider left to try
+     */
+    private CompletableFuture<RpcResponse> sendTo(Method method, Object[] args, long deadline, MethodPolicy policy,
+                                                  Set<String> tried, int attempt) throws InterruptedException {
+        RpcRequest request = newRequest(method, args);
+        if (deadline != 0) {
+            // the time left of the call, retries and hedged requests get less
+            request.setTimeoutMillis(Math.max(deadline - System.currentTimeMillis(), 1));
+        }
+        long[] permit = new long[1];
+        Provider provider = selectProvider(request, tried != null ? tried : Collections.emptySet(), policy, permit);
+        if (provider == null) {
+            return null;
+        }
+        if (tried != null) {
+            tried.add(provider.getAddress());
+        }
+
+        ProviderStats stats = ProviderStats.of(provider.getAddress());
+        ProviderCircuitBreaker breaker = policy.breaker(provider);
+        stats.begin();
+        long time = System.nanoTime();
+        CompletableFuture<RpcResponse> sent;
+        try {
+            // get the pooled connection of the server, send request/receive response
+            RpcClient client = ConnectionManager.getInstance().getClient(provider);
+            applyMethodId(client, request, method);
+            sent = client.sendAsync(request);
+        } catch (InterruptedException e) {
+            long latency = System.nanoTime() - time;
+            stats.end(latency);
+            if (breaker != null) {
+                // releases the probe of a half open breaker, which would otherwise stay taken
+                breaker.onResult(permit[0], latency, true);
+            }
+            throw e;
+        } catch (Exception e) {
+            // the provider can not be connected, handled like any other transport failure
+            sent = CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<RpcResponse> responseFuture = sent.whenComplete((response, cause) -> {
+            long latency = System.nanoTime() - time;
+            stats.end(latency);
+            if (breaker != null) {
+                breaker.onResult(permit[0], latency, cause != null || isOverloaded(response));
+            }
+        });
+        int maxRetries = Math.max(policy.getRetries(), MAX_OVERLOADED_RETRIES);
+        if (attempt >= maxRetries) {
+            return responseFuture;
+        }
+        return responseFuture.handle((response, cause) -> {
+            Throwable failure = cause instanceof CompletionException && cause.getCause() != null ? cause.getCause() : cause;
+            boolean retry = isOverloaded(response) ? attempt < MAX_OVERLOADED_RETRIES
+                    : failure != null && !(failure instanceof RpcTimeoutException) && attempt < policy.getRetries();
+            if (!retry) {
+                return outcome(response, failure);
+            }
+            Set<String> next = tried != null ? tried : newTriedSet(provider.getAddress());
+            // connecting to another provider may block, so the retry does not run on the I/O thread
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    CompletableFuture<RpcResponse> retryFuture = sendTo(method, args, deadline, policy, next, attempt + 1);
+                    return retryFuture != null ? retryFuture : outcome(response, failure);
+                } catch (InterruptedException e) {
+                    throw new CompletionException(e);
+                }
+            }, ConnectionManager.getInstance().executor()).thenCompose(retryFuture -> retryFuture);
+        }).thenCompose(retryFuture -> retryFuture);
+    }
+
+    /**
+     * send the call, and send it to a second provider as well if the first has not answered after the hedge delay,
+     * the first answer wins
+     * @return null if there is no provider to try
+     */
+    private CompletableFuture<RpcResponse> sendHedged(Method method, Object[] args, long deadline, MethodPolicy policy,
+                                                      long hedgeDelayNanos) throws InterruptedException {
+        Set<String> tried = newTriedSet(null);
+        CompletableFuture<RpcResponse> first = sendTo(method, args, deadline, policy, tried, 0);
+        if (first == null) {
+            return null;
+        }
+        CompletableFuture<RpcResponse> result = new CompletableFuture<>();
+        // attempts whose outcome is still unknown, the result fails only when all of them failed
+        AtomicInteger outstanding = new AtomicInteger(1);
+        BiConsumer<RpcResponse, Throwable> onOutcome = (response, cause) -> {
+            if (cause == null && !isOverloaded(response)) {
+                result.complete(response);
+            } else if (outstanding.decrementAndGet() == 0) {
+                completeWith(result, response, cause);
+            }
+        };
+        first.whenComplete(onOutcome);
+        Executor hedgeExecutor = CompletableFuture.delayedExecutor(hedgeDelayNanos, TimeUnit.NANOSECONDS,
+                ConnectionManager.getInstance().executor());
+        hedgeExecutor.execute(() -> {
+            if (result.isDone()) {
+                return;
+            }
+            outstanding.incrementAndGet();
+            CompletableFuture<RpcResponse> hedge = null;
+            try {
+                // no retries for the hedged request, the first attempt still has its own
+                hedge = sendTo(method, args, deadline, policy, tried, Integer.MAX_VALUE);
+            } catch (InterruptedException | RuntimeException e) {
+                LOGGER.debug("failed to send hedged request of {}", signature(method), e);
+            }
+            if (hedge != null) {
+                hedge.whenComplete(onOutcome);
+            } else if (outstanding.decrementAndGet() == 0) {
+                // the first attempt failed in the meantime and there is no other provider
+                first.whenComplete((response, cause) -> completeWith(result, response, cause));
+            }
+        });
+        return result;
+    }
+
+    private static Set<String> newTriedSet(String address) {
+        Set<String> tried = ConcurrentHashMap.newKeySet(4);
+        if (address != null) {
+            tried.add(address);
+        }
+        return tried;
+    }
+
+    private static boolean isOverloaded(RpcResponse response) {
+        return response != null && response.getException() instanceof RpcOverloadedException;
+    }
+
+    private static CompletableFuture<RpcResponse> outcome(RpcResponse response, Throwable cause) {
+        return cause != null ? CompletableFuture.failedFuture(cause) : CompletableFuture.completedFuture(response);
+    }
+
+    private static void completeWith(CompletableFuture<RpcResponse> future, RpcResponse response, Throwable cause) {
+        if (cause != null) {
+            future.completeExceptionally(cause instanceof CompletionException && cause.getCause() != null
+                    ? cause.getCause() : cause);
+        } else {
+            future.complete(response);
+        }
+    }
+
+    /**
+     * send the request of a method returning a stream, wrap the streaming call into the declared return type
+     */
+    private Object stream(Method method, Object[] args, Class<?> returnType) throws InterruptedException {
+        RpcRequest request = newRequest(method, args);
+        Provider provider = selectProvider(request);
+        RpcClient client = ConnectionManager.getInstance().getClient(provider);
+        applyMethodId(client, request, method);
+        metrics(method).count();
+        StreamCall call = client.sendStream(request);
+        if (returnType == Iterator.class) {
+            return call;
+        }
+        if (returnType == Stream.class) {
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(call, Spliterator.ORDERED), false)
+                    .onClose(call::close);
+        }
+        return new StreamPublisher(call);
+    }
+
+    /**
+     * build the request of the one-way method call and write it, the server sends no response
+     * @return completed once the request is written
+     */
+    private CompletableFuture<Void> sendOneWay(Method method, Object[] args) throws InterruptedException {
+        RpcRequest request = newRequest(method, args);
+        Provider provider = selectProvider(request);
+        RpcClient client = ConnectionManager.getInstance().getClient(provider);
+        applyMethodId(client, request, method);
+        MethodMetrics methodMetrics = metrics(method);
+        methodMetrics.count();
+        return client.sendOneWay(request).whenComplete((ignored, cause) -> {
+            if (cause != null) {
+                methodMetrics.error();
+                LOGGER.warn("failed to send one-way request {}.{}", request.getInterfaceName(), request.getMethodName(), cause);
+            }
+        });
+    }
+
+    private RpcRequest newRequest(Method method, Object[] args) {
+        // create rpcRequest object and set its fields, the requestId is assigned by the connection
+        RpcRequest request = new RpcRequest();
+        request.setInterfaceName(method.getDeclaringClass().getName());
+        request.setServiceVersion(serviceVersion);
+        request.setMethodName(method.getName());
+        request.setParameterTypes(method.getParameterTypes());
+        request.setParameters(args);
+        request.setSerializer(serializer);
+        request.setCompressor(compressor);
+        return request;
+    }
+
+    /**
+     * replace the names identifying the method with its id if the server has sent one in the handshake
+     */
+    private void applyMethodId(RpcClient client, RpcRequest request, Method method) {
+        int methodId = client.getMethodId(signature(method));
+        if (methodId != 0) {
+            request.setMethodId(methodId);
+            request.setInterfaceName(null);
+            request.setServiceVersion(null);
+            request.setMethodName(null);
+            request.setParameterTypes(null);
+        }
+    }
+
+    private String signature(Method method) {
+        String signature = signatures.get(method);
+        return signature != null ? signature : signatures.computeIfAbsent(method, m -> MethodSignature.of(
+                m.getDeclaringClass().getName(), serviceVersion, m.getName(), m.getParameterTypes()));
+    }
+
+    private MethodPolicy policy(Method method) {
+        MethodPolicy policy = policies.get(method);
+        return policy != null ? policy : policies.computeIfAbsent(method, m ->
+                new MethodPolicy(m, signature(m), MetricsRegistry.client().method(signature(m))));
+    }
+
+    private MethodMetrics metrics(Method method) {
+        return policy(method).getMetrics();
+    }
+
+    private Provider selectProvider(RpcRequest request) {
+        return selectProvider(request, Collections.emptySet(), null, null);
+    }
+
+    /**
+     * the configured service address, or the provider picked by the load balancer from the discovered ones
+     * @param excluded addresses of the providers not to pick
+     * @param policy skip the providers whose circuit breaker of the method is open, null to ignore breakers
+     * @param permit receives the permit of the breaker of the selected provider, null if policy is null
+     * @return null if every provider is excluded or its breaker lets no call through
+     */
+    private Provider selectProvider(RpcRequest request, Set<String> excluded, MethodPolicy policy, long[] permit) {
+        List<Provider> providers;
+        boolean codecs = false;
+        if (rpcProxy.getServiceDiscovery() == null) {
+            if (staticProvider == null) {
+                throw new RuntimeException("server address is empty");
+            }
+            providers = List.of(staticProvider);
+        } else {
+            // 获取服务地址
+            providers = rpcProxy.getServiceDiscovery().lookup(serviceName);
+            if (providers.isEmpty()) {
+                throw new RuntimeException(String.format("can not find any address of service: %s", serviceName));
+            }
+            // skip the providers that advertise they cannot read the serializer / compressor of this proxy
+            codecs = !supportsCodecs(providers);
+        }
+        boolean breakers = policy != null && policy.hasBreaker();
+        if (excluded.isEmpty() && !breakers && !codecs) {
+            Provider provider = loadBalancer.select(providers, request);
+            LOGGER.debug("discover service: {} => {}", serviceName, provider);
+            return provider;
+        }
+        // half open breakers whose only probe another call took, skipped like the excluded providers
+        Set<String> probing = new HashSet<>();
+        boolean checkCodecs = codecs;
+        while (true) {
+            // the load balancer skips the unavailable providers of the published list, the list is not filtered
+            // so the state it derives from the list (e.g. a hash ring) stays valid
+            Provider provider = loadBalancer.select(providers, request, candidate ->
+                    !excluded.contains(candidate.getAddress())
+                            && !probing.contains(candidate.getAddress())
+                            && (!checkCodecs || supportsCodecs(candidate))
+                            && (!breakers || policy.breaker(candidate).isAvailable()));
+            if (provider == null) {
+                if (codecs && providers.stream().noneMatch(this::supportsCodecs)) {
+                    throw new RuntimeException(String.format("no provider of service %s supports serializer %d and compressor %d",
+                            serviceName, serializer, compressor));
+                }
+                return null;
+            }
+            long acquired = breakers ? policy.breaker(provider).tryAcquire() : ProviderCircuitBreaker.PERMITTED;
+            if (acquired != ProviderCircuitBreaker.DENIED) {
+                if (permit != null) {
+                    permit[0] = acquired;
+                }
+                LOGGER.debug("discover service: {} => {}", serviceName, provider);
+                return provider;
+            }
+            // another call took the only probe of the half open breaker, select among the others
+            probing.add(provider.getAddress());
+        }
+    }
+
+    private boolean supportsCodecs(List<Provider> providers) {
+        for (Provider provider : providers) {
+            if (!supportsCodecs(provider)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean supportsCodecs(Provider provider) {
+        return provider.supportsSerializer(serializer) && provider.supportsCompressor(compressor);
+    }
+
+    /**
+     * map the response future to a future of the call result, completed on the callback executor if there is one,
+     * otherwise directly on the Netty I/O thread that received the response
+     */
+    private CompletableFuture<Object> toResultFuture(CompletableFuture<RpcResponse> responseFuture) {
+        CompletableFuture<Object> resultFuture = new CompletableFuture<>();
+        Executor callbackExecutor = rpcProxy.getCallbackExecutor();
+        if (callbackExecutor != null) {
+            responseFuture.whenCompleteAsync((response, cause) -> complete(resultFuture, response, cause), callbackExecutor);
+        } else {
+            responseFuture.whenComplete((response, cause) -> complete(resultFuture, response, cause));
+        }
+        return resultFuture;
+    }
+
+    private static void complete(CompletableFuture<Object> resultFuture, RpcResponse response, Throwable cause) {
+        if (cause != null) {
+            resultFuture.completeExceptionally(cause);
+        } else if (response == null) {
+            resultFuture.completeExceptionally(new RuntimeException("response is null"));
+        } else if (response.hasException()) {
+            resultFuture.completeExceptionally(response.getException());
+        } else {
+            resultFuture.complete(response.getResult());
+        }
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type.isPrimitive() && type != void.class) {
+            return Array.get(Array.newInstance(type, 1), 0);
+        }
+        return null;
+    }
+}
@@ -1,27 +1,39 @@
 package com.osako.rpc.client;
 
-import com.osako.entity.RpcRequest;
-import com.osako.entity.RpcResponse;
-import org.apache.commons.lang3.StringUtils;import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import com.osako.rpc.client.loadbalance.LoadBalancer;
+import com.osako.rpc.client.loadbalance.RandomLoadBalancer;
 import com.osako.rpc.registry.ServiceDiscovery;
+import com.osako.compress.Compressor;
+import com.osako.serializer.Serializer;
+import com.osako.serializer.Serializers;
 
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
-import java.util.UUID;
+import java.util.concurrent.Executor;
 
 /**
  * RPC Dynamic Proxy, augument the send method in com.osako.rpc.client.RpcClient by setting the field of RpcRequest
  */
 public class RpcProxy {
 
-    private static final Logger LOGGER = LoggerFactory.getLogger(RpcProxy.class);
+    // 默认的调用超时时间（毫秒）
+    public static final long DEFAULT_TIMEOUT_MILLIS = 5000;
 
     private String serviceAddress;
 
     private ServiceDiscovery serviceDiscovery;
 
+    private Executor callbackExecutor;
+
+    private LoadBalancer loadBalancer = new RandomLoadBalancer();
+
+    private Serializer serializer = Serializers.getDefault();
+
+    private Compressor compressor;
+
+    private long timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+
+    private LocalInvocation localInvocation = LocalInvocation.DISABLED;
+
     /**
      * 该构造函数用于供给用户通过spring配置文件注入服务地址
      * @param serviceAddress
@@ -65,63 +77,133 @@ public class RpcProxy {
      */
     @SuppressWarnings("unchecked")
     public <T> T create(final Class<?> interfaceClass, final String serviceVersion) {
+        ProxyConfig config = new ProxyConfig();
+        config.setServiceVersion(serviceVersion);
+        return create(interfaceClass, config);
+    }
+
+    /**
+     * 使用单独的配置创建代理（版本号、负载均衡策略等），未设置的配置项使用 RpcProxy 的默认值
+     * @param interfaceClass 服务的接口类型
+     * @param config 该服务代理的配置
+     * @param <T>
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T create(final Class<?> interfaceClass, final ProxyConfig config) {
         // 使用JDK动态代理机制创建动态代理对象
         return (T) Proxy.newProxyInstance(
                 interfaceClass.getClassLoader(),
                 new Class<?>[]{interfaceClass},
-                new InvocationHandler() {
-                    @Override
-                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-                        // create rpcRequest object and set its fields
-                        RpcRequest request = new RpcRequest();
-                        request.setRequestId(UUID.randomUUID().toString());
-                        request.setInterfaceName(method.getDeclaringClass().getName());
-                        request.setServiceVersion(serviceVersion);
-                        request.setMethodName(method.getName());
-                        request.setParameterTypes(method.getParameterTypes());
-                        request.setParameters(args);
-                        if (serviceDiscovery != null) {
-                            // 获取服务名称（被暴露的实现类的接口名称）和版本号
-                            String serviceName = interfaceClass.getName();
-                            if (serviceVersion != null) {
-                                String service_version = serviceVersion.trim();
-                                if (!StringUtils.isEmpty(service_version)) {
-                                    serviceName += "-" + service_version;
-                                }
-                            }
-                            // 获取服务地址
-                            serviceAddress = serviceDiscovery.discovery(serviceName);
-                            LOGGER.info("discover service: {} => {}", serviceName, serviceAddress);
-                        }
-                        if (serviceAddress != null) {
-                            serviceAddress = serviceAddress.trim();
-                            if (StringUtils.isEmpty(serviceAddress)) {
-                                throw new RuntimeException("server address is empty");
-                            }
-                        }
-
-                        // parse the hostname and port number from serviceAddress ？？？为啥要用apache
-                        String[] array = StringUtils.split(serviceAddress, ":");
-                        String host = array[0];
-                        int port = Integer.parseInt(array[1]);
-
-                        // create RPC client object, build connection/send request/receive response
-                        RpcClient client = new RpcClient(host, port);
-                        long time = System.currentTimeMillis(); //当前时间
-                        RpcResponse response = client.send(request);
-                        LOGGER.info("time: {}ms", System.currentTimeMillis() - time);
-
-                        if (response == null) {
-                            throw new RuntimeException("response is null");
-                        }
-                        // 返回RPC响应结果
-                        if (response.hasException()) {
-                            throw response.getException();
-                        } else {
-                            return response.getResult();
-                        }
-                    }
-                }
+                new RpcInvocationHandler(this, interfaceClass, config)
         );
     }
+
+    /**
+     * 创建异步代理，调用不会阻塞调用线程，而是返回在收到 RpcResponse 时完成的 CompletableFuture
+     * （服务接口中返回 CompletableFuture 的方法，通过 create() 创建的代理也是异步调用的）
+     *
+     * @param interfaceClass 服务的接口类型
+     * @param <T>
+     * @return
+     */
+    public <T> AsyncProxy<T> createAsync(final Class<T> interfaceClass) {
+        return createAsync(interfaceClass, "");
+    }
+
+    public <T> AsyncProxy<T> createAsync(final Class<T> interfaceClass, final String serviceVersion) {
+        T proxy = create(interfaceClass, serviceVersion);
+        return new AsyncProxy<>(proxy);
+    }
+
+    public <T> AsyncProxy<T> createAsync(final Class<T> interfaceClass, final ProxyConfig config) {
+        T proxy = create(interfaceClass, config);
+        return new AsyncProxy<>(proxy);
+    }
+
+    /**
+     * 默认的负载均衡策略（默认随机），可以通过 ProxyConfig 为单个服务代理指定其它策略
+     * @param loadBalancer
+     */
+    public void setLoadBalancer(LoadBalancer loadBalancer) {
+        this.loadBalancer = loadBalancer;
+    }
+
+    LoadBalancer getLoadBalancer() {
+        return loadBalancer;
+    }
+
+    /**
+     * 默认的序列化方式（默认 Protostuff），可以通过 ProxyConfig 为单个服务代理指定其它方式
+     * @param serializer
+     */
+    public void setSerializer(Serializer serializer) {
+        this.serializer = serializer;
+    }
+
+    Serializer getSerializer() {
+        return serializer;
+    }
+
+    /**
+     * 默认的压缩方式（默认不压缩），只压缩超过阈值的请求体，服务端也使用同样的方式压缩大的响应
+     * 可以通过 ProxyConfig 为单个服务代理指定其它方式
+     * @param compressor
+     */
+    public void setCompressor(Compressor compressor) {
+        this.compressor = compressor;
+    }
+
+    Compressor getCompressor() {
+        return compressor;
+    }
+
+    /**
+     * 默认的调用超时时间（毫秒，默认 DEFAULT_TIMEOUT_MILLIS，0 表示不超时），超时后调用失败并抛出 RpcTimeoutException，
+     * 剩余的时间随请求发给服务端，服务端不再执行在队列中等待超时的请求，直接回复 RpcTimeoutException
+     * 可以通过 ProxyConfig 为单个服务代理、通过 @Timeout 为单个方法指定其它值
+     * @param timeoutMillis
+     */
+    public void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * 服务提供者在同一 JVM 中（由本 JVM 的 RpcServer 暴露）时的调用方式，默认 DISABLED 仍然发送请求
+     * COPY / REFERENCE 直接调用服务对象，不经过服务发现、网络和序列化；超时、重试、熔断、对冲等远程调用的策略不再适用
+     * 可以通过 ProxyConfig 为单个服务代理指定其它方式
+     * @param localInvocation
+     */
+    public void setLocalInvocation(LocalInvocation localInvocation) {
+        this.localInvocation = localInvocation;
+    }
+
+    LocalInvocation getLocalInvocation() {
+        return localInvocation;
+    }
+
+    /**
+     * 异步调用的回调线程池，设置后 CompletableFuture 在该线程池中完成，用户的后续操作不会占用 Netty 的 I/O 线程；
+     * 未设置时直接在收到响应的 I/O 线程中完成
+     * @param callbackExecutor
+     */
+    public void setCallbackExecutor(Executor callbackExecutor) {
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    Executor getCallbackExecutor() {
+        return callbackExecutor;
+    }
+
+    String getServiceAddress() {
+        return serviceAddress;
+    }
+
+    ServiceDiscovery getServiceDiscovery() {
+        return serviceDiscovery;
+    }
 }
@@ -0,0 +1,178 @@
+package com.osako.rpc.client;
+
+import com.osako.codec.ProtocolConstant;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Client side of a streaming call, elements are queued as their STREAM frames arrive and consumed lazily
+ * Credit-based flow control: the server sends at most STREAM_INITIAL_CREDIT elements ahead of the consumer,
+ * credit is granted back in CREDIT frames once half of it is consumed, so the queue never holds the whole result
+ */
+class StreamCall implements Iterator<Object>, AutoCloseable {
+
+    // queued at the end of the stream
+    static final Object END = new Object();
+    // queued for a null element
+    static final Object NULL = new Object();
+
+    private static final int CREDIT_BATCH = ProtocolConstant.STREAM_INITIAL_CREDIT / 2;
+
+    private final RpcClient client;
+    private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+
+    private volatile long requestId;
+    private volatile Throwable error;
+    // called on the I/O thread whenever something is queued
+    private volatile Runnable listener;
+    // any frame of the stream has arrived, so the server knows the stream and can be told to cancel it
+    private volatile boolean received;
+    private volatile boolean cancelled;
+
+    // consumer side, only touched by the consuming thread
+    private boolean ended;
+    private Object next;
+    private int consumed;
+
+    StreamCall(RpcClient client) {
+        this.client = client;
+    }
+
+    void setRequestId(long requestId) {
+        this.requestId = requestId;
+    }
+
+    void setListener(Runnable listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * an element arrived, on the I/O thread
+     */
+    void onElement(Object element) {
+        received = true;
+        if (cancelled) {
+            // closed before the first frame arrived, cancel now that the server knows the stream
+            client.cancelStream(requestId);
+            return;
+        }
+        queue.add(element == null ? NULL : element);
+        signal();
+    }
+
+    /**
+     * the stream ended, on the I/O thread
+     * @param cause null if the stream completed normally
+     */
+    void onEnd(Throwable cause) {
+        error = cause;
+        queue.add(END);
+        signal();
+    }
+
+    private void signal() {
+        Runnable listener = this.listener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next != null) {
+            return true;
+        }
+        if (ended) {
+            return false;
+        }
+        Object element;
+        try {
+            element = queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted while waiting for the stream", e);
+        }
+        if (element == END) {
+            ended = true;
+            throwIfFailed();
+            return false;
+        }
+        next = element;
+        return true;
+    }
+
+    @Override
+    public Object next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Object element = next;
+        next = null;
+        consumed();
+        return element == NULL ? null : element;
+    }
+
+    /**
+     * non-blocking take
+     * @return the next element (NULL for a null element), END once the stream has ended, null if nothing has arrived yet
+     */
+    Object poll() {
+        if (ended) {
+            return END;
+        }
+        Object element = queue.poll();
+        if (element == END) {
+            ended = true;
+        } else if (element != null) {
+            consumed();
+        }
+        return element;
+    }
+
+    /**
+     * whether the next poll() returns END
+     */
+    boolean isEndNext() {
+        return ended || queue.peek() == END;
+    }
+
+    Throwable getError() {
+        return error;
+    }
+
+    /**
+     * stop consuming, the server is told to stop sending unless the stream has already ended
+     */
+    @Override
+    public void close() {
+        if (ended || cancelled) {
+            return;
+        }
+        cancelled = true;
+        queue.clear();
+        if (received) {
+            client.cancelStream(requestId);
+        }
+    }
+
+    private void consumed() {
+        if (++consumed >= CREDIT_BATCH) {
+            client.sendCredit(requestId, consumed);
+            consumed = 0;
+        }
+    }
+
+    private void throwIfFailed() {
+        Throwable error = this.error;
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        } else if (error instanceof Error) {
+            throw (Error) error;
+        } else if (error != null) {
+            throw new RuntimeException(error.getMessage(), error);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.osako.rpc.client;
+
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Flow.Publisher view of a streaming call, for service methods declared to return one
+ * Elements are delivered as the subscriber requests them, on the I/O thread that received them
+ * or on the thread calling request(); only one subscriber is allowed
+ */
+class StreamPublisher implements Flow.Publisher<Object> {
+
+    private final StreamCall call;
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    StreamPublisher(StreamCall call) {
+        this.call = call;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Object> subscriber) {
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("a streaming call can only be subscribed once"));
+            return;
+        }
+        StreamSubscription subscription = new StreamSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        call.setListener(subscription::drain);
+        subscription.drain();
+    }
+
+    private class StreamSubscription implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super Object> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean done;
+
+        StreamSubscription(Flow.Subscriber<? super Object> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancel();
+                subscriber.onError(new IllegalArgumentException("non-positive request: " + n));
+                return;
+            }
+            demand.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            done = true;
+            call.close();
+        }
+
+        /**
+         * deliver what is queued and requested, only one thread delivers at a time
+         */
+        void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            for (;;) {
+                while (!done) {
+                    // the end is delivered even without demand
+                    Object element = call.isEndNext() || demand.get() > 0 ? call.poll() : null;
+                    if (element == null) {
+                        break;
+                    }
+                    if (element == StreamCall.END) {
+                        done = true;
+                        Throwable error = call.getError();
+                        if (error != null) {
+                            subscriber.onError(error);
+                        } else {
+                            subscriber.onComplete();
+                        }
+                        break;
+                    }
+                    demand.decrementAndGet();
+                    subscriber.onNext(element == StreamCall.NULL ? null : element);
+                }
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.osako.rpc.client.loadbalance;
+
+import com.osako.entity.RpcRequest;
+import com.osako.rpc.registry.Provider;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Consistent hashing on one argument of the call, requests with the same argument value go to the same provider
+ * (cache affinity), and only the keys of a removed / added provider move when the provider list changes
+ * The ring is built from the provider addresses and only rebuilt when they change, not when the providers only
+ * publish new metadata; unavailable providers are skipped by walking on along the full ring, so the keys of
+ * the others do not move
+ */
+public class ConsistentHashLoadBalancer implements LoadBalancer {
+
+    private static final int DEFAULT_VIRTUAL_NODES = 160;
+
+    private final int argumentIndex;
+    private final int virtualNodes;
+
+    // service name (interface-version, as discovered) -> ring built from the addresses of the provider list it was last called with
+    private final Map<String, Ring> rings = new ConcurrentHashMap<>();
+
+    /**
+     * @param argumentIndex index of the argument that is hashed
+     */
+    public ConsistentHashLoadBalancer(int argumentIndex) {
+        this(argumentIndex, DEFAULT_VIRTUAL_NODES);
+    }
+
+    public ConsistentHashLoadBalancer(int argumentIndex, int virtualNodes) {
+        this.argumentIndex = argumentIndex;
+        this.virtualNodes = virtualNodes;
+    }
+
+    @Override
+    public Provider select(List<Provider> providers, RpcRequest request) {
+        if (providers.size() == 1) {
+            return providers.get(0);
+        }
+        return ring(providers, request).select(hash(key(request)), provider -> true);
+    }
+
+    @Override
+    public Provider select(List<Provider> providers, RpcRequest request, Predicate<Provider> available) {
+        if (providers.size() == 1) {
+            Provider provider = providers.get(0);
+            return available.test(provider) ? provider : null;
+        }
+        return ring(providers, request).select(hash(key(request)), available);
+    }
+
+    private Ring ring(List<Provider> providers, RpcRequest request) {
+        String serviceName = request.getServiceName();
+        Ring ring = rings.get(serviceName);
+        // discovery publishes a new list object on every change, an unchanged list is the fast path
+        if (ring == null || ring.providers != providers) {
+            ring = ring != null && ring.hasAddressesOf(providers)
+                    ? ring.withProviders(providers) : new Ring(providers, virtualNodes);
+            rings.put(serviceName, ring);
+        }
+        return ring;
+    }
+
+    private String key(RpcRequest request) {
+        Object[] parameters = request.getParameters();
+        Object key = parameters != null && argumentIndex < parameters.length
+                ? parameters[argumentIndex] : request.getMethodName();
+        return String.valueOf(key);
+    }
+
+    private static final class Ring {
+
+        private final List<Provider> providers;
+        // hash -> address, shared by the rings of provider lists with the same addresses
+        private final NavigableMap<Long, String> nodes;
+        // address -> provider of the current list
+        private final Map<String, Provider> byAddress;
+
+        Ring(List<Provider> providers, int virtualNodes) {
+            this.providers = providers;
+            this.nodes = new TreeMap<>();
+            for (Provider provider : providers) {
+                for (int i = 0; i < virtualNodes; i++) {
+                    nodes.put(hash(provider.getAddress() + "#" + i), provider.getAddress());
+                }
+            }
+            this.byAddress = byAddress(providers);
+        }
+
+        private Ring(List<Provider> providers, NavigableMap<Long, String> nodes) {
+            this.providers = providers;
+            this.nodes = nodes;
+            this.byAddress = byAddress(providers);
+        }
+
+        private static Map<String, Provider> byAddress(List<Provider> providers) {
+            Map<String, Provider> byAddress = new HashMap<>(providers.size() * 2);
+            for (Provider provider : providers) {
+                byAddress.put(provider.getAddress(), provider);
+            }
+            return byAddress;
+        }
+
+        boolean hasAddressesOf(List<Provider> providers) {
+            if (providers.size() != this.providers.size()) {
+                return false;
+            }
+            for (Provider provider : providers) {
+                if (!byAddress.containsKey(provider.getAddress())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        Ring withProviders(List<Provider> providers) {
+            return new Ring(providers, nodes);
+        }
+
+        /**
+         * the first available provider clockwise from the hash
+         * @return null if no provider is available
+         */
+        Provider select(long hash, Predicate<Provider> available) {
+            Provider first = provider(nodes.ceilingEntry(hash));
+            if (available.test(first)) {
+                return first;
+            }
+            // walk on, each provider is tested once
+            Set<String> tested = new HashSet<>();
+            tested.add(first.getAddress());
+            Iterator<String> tail = nodes.tailMap(hash, false).values().iterator();
+            Iterator<String> head = nodes.headMap(hash, true).values().iterator();
+            while (tested.size() < byAddress.size() && (tail.hasNext() || head.hasNext())) {
+                String address = tail.hasNext() ? tail.next() : head.next();
+                if (tested.add(address)) {
+                    Provider provider = byAddress.get(address);
+                    if (available.test(provider)) {
+                        return provider;
+                    }
+                }
+            }
+            return null;
+        }
+
+        private Provider provider(Map.Entry<Long, String> entry) {
+            return byAddress.get(entry != null ? entry.getValue() : nodes.firstEntry().getValue());
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a with a murmur3 finalizer, spreads similar keys over the whole ring
+     */
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
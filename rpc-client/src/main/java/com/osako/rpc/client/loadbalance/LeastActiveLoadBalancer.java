@@ -0,0 +1,36 @@
+package com.osako.rpc.client.loadbalance;
+
+import com.osako.entity.RpcRequest;
+import com.osako.rpc.registry.Provider;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Selects the provider with the fewest requests in flight from this client, ties are broken randomly
+ */
+public class LeastActiveLoadBalancer implements LoadBalancer {
+
+    @Override
+    public Provider select(List<Provider> providers, RpcRequest request) {
+        int size = providers.size();
+        if (size == 1) {
+            return providers.get(0);
+        }
+        Provider selected = null;
+        int leastActive = Integer.MAX_VALUE;
+        int ties = 0;
+        for (Provider provider : providers) {
+            int active = ProviderStats.of(provider.getAddress()).getActive();
+            if (active < leastActive) {
+                leastActive = active;
+                selected = provider;
+                ties = 1;
+            } else if (active == leastActive && ThreadLocalRandom.current().nextInt(++ties) == 0) {
+                // reservoir sampling, every tied provider has the same chance
+                selected = provider;
+            }
+        }
+        return selected;
+    }
+}
@@ -0,0 +1,38 @@
+package com.osako.rpc.client.loadbalance;
+
+import com.osako.entity.RpcRequest;
+import com.osako.rpc.registry.Provider;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Power of two choices on the load the providers publish in the registry: picks two random providers and sends
+ * to the one with the lower load relative to its weight
+ * The published load (requests in flight from all clients) is only refreshed every few seconds,
+ * the requests in flight from this client are added so the choice follows this client's own traffic in between
+ */
+public class LeastLoadLoadBalancer implements LoadBalancer {
+
+    @Override
+    public Provider select(List<Provider> providers, RpcRequest request) {
+        int size = providers.size();
+        if (size == 1) {
+            return providers.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        Provider a = providers.get(first);
+        Provider b = providers.get(second);
+        return cost(a) <= cost(b) ? a : b;
+    }
+
+    private static double cost(Provider provider) {
+        int load = Math.max(provider.getLoad(), 0) + ProviderStats.of(provider.getAddress()).getActive() + 1;
+        return (double) load / Math.max(provider.getWeight(), 1);
+    }
+}
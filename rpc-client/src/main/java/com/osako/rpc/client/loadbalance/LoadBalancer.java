@@ -0,0 +1,48 @@
+package com.osako.rpc.client.loadbalance;
+
+import com.osako.entity.RpcRequest;
+import com.osako.rpc.registry.Provider;
+
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Load balancing SPI, picks the provider a request is sent to
+ * An instance can be set as the default of RpcProxy or per service proxy through ProxyConfig
+ */
+public interface LoadBalancer {
+
+    /**
+     * select one of the providers
+     * @param providers all providers of the service, never empty
+     * @param request the request to send
+     * @return
+     */
+    Provider select(List<Provider> providers, RpcRequest request);
+
+    /**
+     * select one of the providers that are available (e.g. not tried yet, circuit breaker not open)
+     * The default selects among a filtered copy of the list, a load balancer that keeps state derived from the
+     * provider list (e.g. a hash ring) overrides it to skip the unavailable providers without a new list
+     * @param providers all providers of the service, never empty
+     * @param request the request to send
+     * @param available whether a provider may be selected
+     * @return null if no provider is available
+     */
+    default Provider select(List<Provider> providers, RpcRequest request, Predicate<Provider> available) {
+        int unavailable = 0;
+        for (Provider provider : providers) {
+            if (!available.test(provider)) {
+                unavailable++;
+            }
+        }
+        if (unavailable == 0) {
+            return select(providers, request);
+        }
+        if (unavailable == providers.size()) {
+            return null;
+        }
+        return select(providers.stream().filter(available).collect(Collectors.toList()), request);
+    }
+}
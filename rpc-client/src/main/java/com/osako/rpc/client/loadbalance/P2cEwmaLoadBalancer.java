@@ -0,0 +1,36 @@
+package com.osako.rpc.client.loadbalance;
+
+import com.osako.entity.RpcRequest;
+import com.osako.rpc.registry.Provider;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Power of two choices: picks two random providers and sends to the cheaper one,
+ * the cost of a provider is its latency EWMA multiplied by its requests in flight + 1
+ */
+public class P2cEwmaLoadBalancer implements LoadBalancer {
+
+    @Override
+    public Provider select(List<Provider> providers, RpcRequest request) {
+        int size = providers.size();
+        if (size == 1) {
+            return providers.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        Provider a = providers.get(first);
+        Provider b = providers.get(second);
+        return cost(a) <= cost(b) ? a : b;
+    }
+
+    private static double cost(Provider provider) {
+        ProviderStats stats = ProviderStats.of(provider.getAddress());
+        return (stats.getLatencyEwmaNanos() + 1) * (stats.getActive() + 1);
+    }
+}
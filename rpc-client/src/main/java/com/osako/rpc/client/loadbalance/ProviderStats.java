@@ -0,0 +1,67 @@
+package com.osako.rpc.client.loadbalance;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per provider statistics kept by this client, fed by every call and read by the load balancers:
+ * requests in flight and an exponentially weighted moving average of the latency
+ * Statistics of providers this client stopped calling (e.g. gone from discovery) are evicted after a while,
+ * so provider churn does not grow them without bound
+ */
+public final class ProviderStats {
+
+    // provider address (host:port) -> statistics, the load balancers read them on every selection
+    private static final Cache<String, ProviderStats> STATS = Caffeine.newBuilder()
+            .expireAfterAccess(10, TimeUnit.MINUTES)
+            .maximumSize(65536)
+            .build();
+
+    // older samples lose weight with this time constant, so the average follows a provider that slows down
+    private static final double DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final AtomicInteger active = new AtomicInteger();
+
+    private volatile double latencyEwmaNanos;
+    private long lastUpdateNanos = System.nanoTime();
+
+    private ProviderStats() {
+    }
+
+    public static ProviderStats of(String address) {
+        ProviderStats stats = STATS.getIfPresent(address);
+        return stats != null ? stats : STATS.get(address, key -> new ProviderStats());
+    }
+
+    /**
+     * a request is sent to the provider
+     */
+    public void begin() {
+        active.incrementAndGet();
+    }
+
+    /**
+     * the response of a request arrived (or the request failed)
+     * @param latencyNanos
+     */
+    public void end(long latencyNanos) {
+        active.decrementAndGet();
+        synchronized (this) {
+            long now = System.nanoTime();
+            double weight = Math.exp(-(now - lastUpdateNanos) / DECAY_NANOS);
+            lastUpdateNanos = now;
+            latencyEwmaNanos = latencyEwmaNanos * weight + latencyNanos * (1 - weight);
+        }
+    }
+
+    public int getActive() {
+        return active.get();
+    }
+
+    public double getLatencyEwmaNanos() {
+        return latencyEwmaNanos;
+    }
+}
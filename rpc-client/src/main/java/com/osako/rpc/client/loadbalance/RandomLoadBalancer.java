@@ -0,0 +1,19 @@
+package com.osako.rpc.client.loadbalance;
+
+import com.osako.entity.RpcRequest;
+import com.osako.rpc.registry.Provider;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Uniform random selection, the default
+ */
+public class RandomLoadBalancer implements LoadBalancer {
+
+    @Override
+    public Provider select(List<Provider> providers, RpcRequest request) {
+        int size = providers.size();
+        return size == 1 ? providers.get(0) : providers.get(ThreadLocalRandom.current().nextInt(size));
+    }
+}
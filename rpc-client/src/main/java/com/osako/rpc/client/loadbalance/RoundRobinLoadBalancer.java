@@ -0,0 +1,27 @@
+package com.osako.rpc.client.loadbalance;
+
+import com.osako.entity.RpcRequest;
+import com.osako.rpc.registry.Provider;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Round-robin selection, one counter per service interface
+ */
+public class RoundRobinLoadBalancer implements LoadBalancer {
+
+    private final Map<String, AtomicInteger> counters = new ConcurrentHashMap<>();
+
+    @Override
+    public Provider select(List<Provider> providers, RpcRequest request) {
+        int size = providers.size();
+        if (size == 1) {
+            return providers.get(0);
+        }
+        AtomicInteger counter = counters.computeIfAbsent(request.getServiceName(), name -> new AtomicInteger());
+        return providers.get(Math.floorMod(counter.getAndIncrement(), size));
+    }
+}
@@ -0,0 +1,36 @@
+package com.osako.rpc.client.loadbalance;
+
+import com.osako.entity.RpcRequest;
+import com.osako.rpc.registry.Provider;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Random selection in proportion to the providers' weights
+ */
+public class WeightedRandomLoadBalancer implements LoadBalancer {
+
+    @Override
+    public Provider select(List<Provider> providers, RpcRequest request) {
+        int size = providers.size();
+        if (size == 1) {
+            return providers.get(0);
+        }
+        int totalWeight = 0;
+        for (Provider provider : providers) {
+            totalWeight += Math.max(provider.getWeight(), 0);
+        }
+        if (totalWeight <= 0) {
+            return providers.get(ThreadLocalRandom.current().nextInt(size));
+        }
+        int offset = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (Provider provider : providers) {
+            offset -= Math.max(provider.getWeight(), 0);
+            if (offset < 0) {
+                return provider;
+            }
+        }
+        return providers.get(size - 1);
+    }
+}
@@ -0,0 +1,77 @@
+package com.osako.rpc.client.loadbalance;
+
+import com.osako.entity.RpcRequest;
+import com.osako.rpc.registry.Provider;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps requests in the client's availability zone: the delegate load balancer picks among the providers
+ * that registered the same zone, and among all providers when the zone has none
+ */
+public class ZoneAwareLoadBalancer implements LoadBalancer {
+
+    private final String zone;
+    private final LoadBalancer delegate;
+
+    // service name (interface-version, as discovered) -> providers of the zone, filtered from the provider list it was last called with
+    private final Map<String, ZoneProviders> zones = new ConcurrentHashMap<>();
+
+    /**
+     * @param zone zone of the client
+     * @param delegate picks the provider among those of the zone
+     */
+    public ZoneAwareLoadBalancer(String zone, LoadBalancer delegate) {
+        this.zone = zone;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Provider select(List<Provider> providers, RpcRequest request) {
+        ZoneProviders local = zoneProviders(providers, request);
+        return delegate.select(local.inZone.isEmpty() ? providers : local.inZone, request);
+    }
+
+    /**
+     * among the available providers of the zone, or of all zones when none of the zone is available
+     */
+    @Override
+    public Provider select(List<Provider> providers, RpcRequest request, Predicate<Provider> available) {
+        ZoneProviders local = zoneProviders(providers, request);
+        if (!local.inZone.isEmpty()) {
+            Provider provider = delegate.select(local.inZone, request, available);
+            if (provider != null) {
+                return provider;
+            }
+        }
+        return delegate.select(providers, request, available);
+    }
+
+    private ZoneProviders zoneProviders(List<Provider> providers, RpcRequest request) {
+        String serviceName = request.getServiceName();
+        ZoneProviders local = zones.get(serviceName);
+        // discovery publishes a new list object on every change, so an identity check is enough
+        if (local == null || local.providers != providers) {
+            local = new ZoneProviders(providers, zone);
+            zones.put(serviceName, local);
+        }
+        return local;
+    }
+
+    private static final class ZoneProviders {
+
+        private final List<Provider> providers;
+        private final List<Provider> inZone;
+
+        ZoneProviders(List<Provider> providers, String zone) {
+            this.providers = providers;
+            this.inZone = providers.stream()
+                    .filter(provider -> zone.equals(provider.getZone()))
+                    .collect(Collectors.toUnmodifiableList());
+        }
+    }
+}
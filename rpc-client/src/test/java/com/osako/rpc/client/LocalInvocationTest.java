@@ -0,0 +1,61 @@
+package com.osako.rpc.client;
+
+import com.osako.rpc.registry.local.LocalRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Calls of providers registered in the LocalRegistry of this JVM, no server is involved
+ */
+class LocalInvocationTest {
+
+    public interface OuterService {
+        String outer(String value);
+    }
+
+    public interface InnerService {
+        String inner(String value);
+    }
+
+    private RpcProxy rpcProxy;
+    private OuterService outerBean;
+    private InnerService innerBean;
+
+    @BeforeEach
+    void setUp() {
+        // nothing listens there, every call must stay in this JVM
+        rpcProxy = new RpcProxy("127.0.0.1:1");
+        rpcProxy.setLocalInvocation(LocalInvocation.REFERENCE);
+        InnerService innerProxy = rpcProxy.create(InnerService.class);
+        innerBean = value -> "inner(" + value + ")";
+        outerBean = value -> "outer(" + innerProxy.inner(value) + ")";
+        LocalRegistry.register(InnerService.class.getName(), innerBean);
+        LocalRegistry.register(OuterService.class.getName(), outerBean);
+    }
+
+    @AfterEach
+    void tearDown() {
+        LocalRegistry.unregister(InnerService.class.getName(), innerBean);
+        LocalRegistry.unregister(OuterService.class.getName(), outerBean);
+    }
+
+    @Test
+    void syncCallOfLocalProvider() {
+        OuterService outerService = rpcProxy.create(OuterService.class);
+
+        assertEquals("outer(inner(x))", outerService.outer("x"));
+    }
+
+    @Test
+    void asyncCallOfLocalProviderCallingAnotherProxy() throws Exception {
+        AsyncProxy<OuterService> outerService = rpcProxy.createAsync(OuterService.class);
+
+        // the proxy call made by the provider is not captured as the call of the AsyncProxy
+        assertEquals("outer(inner(x))", outerService.call(service -> service.outer("x")).get(5, TimeUnit.SECONDS));
+    }
+}
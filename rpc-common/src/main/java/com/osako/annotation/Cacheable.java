@@ -0,0 +1,27 @@
+package com.osako.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Caches the results of a read-only method of a service interface on the client, a call with the same arguments
+ * (compared with equals, arrays by content) is answered from the cache without a round trip to the provider
+ * Only successful results are cached, the cached result object is shared by the callers and must not be modified
+ * Usage: @Cacheable(ttlMillis = 60000, maxSize = 10000) Product getProduct(long id);
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Cacheable {
+
+    /**
+     * @return how long a result is used after it was received
+     */
+    long ttlMillis() default 60000;
+
+    /**
+     * @return most results kept, the least valuable (by recency and frequency) are evicted first
+     */
+    long maxSize() default 1000;
+}
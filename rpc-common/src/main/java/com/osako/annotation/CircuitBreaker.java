@@ -0,0 +1,45 @@
+package com.osako.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Per provider circuit breaker for a method of a service interface
+ * The outcomes of the last windowSize calls of the method to a provider are kept, when the share of failed calls
+ * (transport failures, timeouts, overloaded answers) or of slow calls reaches its threshold the breaker opens and
+ * the provider gets no calls of the method for openMillis, then a single probe call decides whether it closes again
+ * Exceptions thrown by the service itself count as successful calls
+ * Usage: @CircuitBreaker(failureRateThreshold = 50, slowCallMillis = 200) Order getOrder(String id);
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CircuitBreaker {
+
+    /**
+     * @return number of most recent calls the rates are computed over, the breaker does not open before
+     * this many calls were made
+     */
+    int windowSize() default 20;
+
+    /**
+     * @return percentage of failed calls in the window that opens the breaker
+     */
+    int failureRateThreshold() default 50;
+
+    /**
+     * @return calls taking longer than this count as slow, 0 disables the slow call threshold
+     */
+    long slowCallMillis() default 0;
+
+    /**
+     * @return percentage of slow calls in the window that opens the breaker
+     */
+    int slowCallRateThreshold() default 80;
+
+    /**
+     * @return how long an open breaker rejects calls before letting a probe call through
+     */
+    long openMillis() default 5000;
+}
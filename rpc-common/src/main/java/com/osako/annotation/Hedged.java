@@ -0,0 +1,26 @@
+package com.osako.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Hedged requests for an idempotent method of a service interface: if the first provider has not answered
+ * within the given latency percentile of the method, the same call is also sent to a second provider
+ * and the first answer wins, which cuts the tail latency caused by a single slow provider at the cost of
+ * (100 - percentile)% extra requests
+ * Hedging only starts once the method has enough recorded calls to estimate the percentile
+ * The method must also be annotated with @Idempotent, creating a proxy of an interface with a hedged method
+ * that is not idempotent fails
+ * Usage: @Hedged(percentile = 95) Order getOrder(String id);
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Hedged {
+
+    /**
+     * @return latency percentile of the method after which the hedged request is sent
+     */
+    double percentile() default 95;
+}
@@ -0,0 +1,22 @@
+package com.osako.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a method of a service interface as idempotent: calling it twice has the same effect as calling it once,
+ * so a call that failed in transport (connection lost, provider unavailable) is retried on a different provider
+ * Calls that reached the service and threw, and calls past their deadline, are not retried
+ * Usage: @Idempotent(retries = 2) Order getOrder(String id);
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Idempotent {
+
+    /**
+     * @return how many other providers are tried at most after the first one failed
+     */
+    int retries() default 1;
+}
@@ -0,0 +1,17 @@
+package com.osako.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a void method of a service interface as one-way (fire-and-forget):
+ * the client returns as soon as the request is written and the server sends no response,
+ * exceptions thrown by the service method are only logged on the server
+ * Usage: @OneWay void log(String message);
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface OneWay {
+}
@@ -0,0 +1,18 @@
+package com.osako.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Coalesces concurrent identical calls of a method of a service interface: while a call is in flight, calls with
+ * the same arguments (compared with equals, arrays by content) do not send a request of their own but share its
+ * result or exception, so a burst of identical calls costs the provider one request
+ * The shared result object must not be modified by the callers
+ * Usage: @SingleFlight Product getProduct(long id);
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface SingleFlight {
+}
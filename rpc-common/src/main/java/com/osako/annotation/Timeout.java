@@ -0,0 +1,21 @@
+package com.osako.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Timeout of the calls of a service interface method, overrides the timeout configured on the proxy
+ * The caller fails with RpcTimeoutException once it has passed, and the server skips the call if it is still queued
+ * Usage: @Timeout(500) Order getOrder(String id);
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Timeout {
+
+    /**
+     * @return timeout in milliseconds, 0 means no timeout
+     */
+    long value();
+}
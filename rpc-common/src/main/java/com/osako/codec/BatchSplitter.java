@@ -0,0 +1,19 @@
+package com.osako.codec;
+
+import com.osako.entity.RpcBatch;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageDecoder;
+
+import java.util.List;
+
+/**
+ * Placed right after RpcDecoder, passes the messages of a batch frame on one by one,
+ * so the handlers behind it never see a batch
+ */
+public class BatchSplitter extends MessageToMessageDecoder<RpcBatch> {
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, RpcBatch batch, List<Object> out) {
+        out.addAll(batch.getMessages());
+    }
+}
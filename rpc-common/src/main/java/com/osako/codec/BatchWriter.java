@@ -0,0 +1,103 @@
+package com.osako.codec;
+
+import com.osako.entity.RpcBatch;
+import com.osako.entity.RpcMessage;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.EventLoop;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Packs the messages written to one channel within maxDelayMicros (at most maxBatchSize of them)
+ * into a single batch frame, so many small concurrent messages cost one write / flush instead of one each
+ * With maxDelayMicros = 0 a batch holds the messages queued on the event loop before it gets to run the flush,
+ * which batches under load without adding latency; note that the NIO event loop wakes up for scheduled tasks with
+ * millisecond precision, so a small positive delay can cost up to about a millisecond
+ * The pending messages are only touched on the event loop of the channel, no locking is needed
+ * Meant for small messages: a batch frame is still bounded by the max frame length of the peer
+ */
+public class BatchWriter {
+
+    private final Channel channel;
+    private final long maxDelayNanos;
+    private final int maxBatchSize;
+
+    private final List<RpcMessage> messages = new ArrayList<>();
+    private final List<ChannelPromise> promises = new ArrayList<>();
+
+    // scheduled flush of the current batch, null when no batch is open
+    private ScheduledFuture<?> flushTask;
+    // flush of the current batch queued on the event loop (maxDelayMicros = 0)
+    private boolean flushQueued;
+
+    public BatchWriter(Channel channel, int maxDelayMicros, int maxBatchSize) {
+        this.channel = channel;
+        this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * add the message to the current batch
+     * @return completed once the batch holding the message is written
+     */
+    public ChannelFuture write(RpcMessage message) {
+        ChannelPromise promise = channel.newPromise();
+        EventLoop eventLoop = channel.eventLoop();
+        if (eventLoop.inEventLoop()) {
+            add(message, promise);
+        } else {
+            eventLoop.execute(() -> add(message, promise));
+        }
+        return promise;
+    }
+
+    private void add(RpcMessage message, ChannelPromise promise) {
+        messages.add(message);
+        promises.add(promise);
+        if (messages.size() >= maxBatchSize) {
+            flush();
+        } else if (flushTask == null && !flushQueued) {
+            if (maxDelayNanos > 0) {
+                flushTask = channel.eventLoop().schedule(this::flush, maxDelayNanos, TimeUnit.NANOSECONDS);
+            } else {
+                // runs after the tasks already queued, their messages join this batch
+                flushQueued = true;
+                channel.eventLoop().execute(this::flush);
+            }
+        }
+    }
+
+    private void flush() {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+        flushQueued = false;
+        if (messages.isEmpty()) {
+            return;
+        }
+        if (messages.size() == 1) {
+            // nothing to batch with, send as a plain frame
+            channel.writeAndFlush(messages.get(0), promises.get(0));
+        } else {
+            List<ChannelPromise> batchPromises = new ArrayList<>(promises);
+            channel.writeAndFlush(new RpcBatch(new ArrayList<>(messages))).addListener((ChannelFutureListener) future -> {
+                for (ChannelPromise promise : batchPromises) {
+                    if (future.isSuccess()) {
+                        promise.trySuccess();
+                    } else {
+                        promise.tryFailure(future.cause());
+                    }
+                }
+            });
+        }
+        messages.clear();
+        promises.clear();
+    }
+}
@@ -0,0 +1,31 @@
+package com.osako.codec;
+
+/**
+ * Frame layout
+ * +-------+---------+------+------------+----------+------------+-------------+------+
+ * | magic | version | type | serializer | compress | request id | body length | body |
+ * |   2   |    1    |  1   |     1      |    1     |     8      |      4      |  n   |
+ * +-------+---------+------+------------+----------+------------+-------------+------+
+ */
+public interface ProtocolConstant {
+
+    short MAGIC = (short) 0xCAFE;
+
+    byte VERSION = 1;
+
+    // offset of the compress byte
+    int COMPRESS_OFFSET = 5;
+
+    // offset of the body length field
+    int LENGTH_FIELD_OFFSET = 14;
+
+    int HEADER_LENGTH = 18;
+
+    // number of stream elements the server may send before the client has granted more credit
+    int STREAM_INITIAL_CREDIT = 64;
+
+    // compress byte: the low 7 bits are the compressor id chosen for the message (0 = none),
+    // the high bit is set when the body is actually compressed
+    int COMPRESSOR_MASK = 0x7F;
+    int COMPRESSED_FLAG = 0x80;
+}
@@ -1,43 +1,139 @@
 package com.osako.codec;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.ByteToMessageDecoder;
-import com.osako.serializer.CustomSerializer;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import com.osako.compress.Compressors;
+import com.osako.entity.MessageType;
+import com.osako.entity.RpcBatch;
+import com.osako.entity.RpcMessage;
+import com.osako.serializer.Serializer;
+import com.osako.serializer.Serializers;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 /**
  * the decoder
+ * Frames (see ProtocolConstant) are split by the body length field of the header, a frame longer than maxFrameLength
+ * fails the connection (TooLongFrameException) instead of being buffered forever,
+ * an uncompressed body is deserialized straight from the inbound ByteBuf,
+ * a batch frame is decoded into an RpcBatch that BatchSplitter passes on message by message
+ * A decoder reading untrusted peers (the server) is given the ids of the serializers it accepts,
+ * a body written by any other serializer fails the connection before it is deserialized
  */
-public class RpcDecoder extends ByteToMessageDecoder {
+public class RpcDecoder extends LengthFieldBasedFrameDecoder {
+
+    public static final int DEFAULT_MAX_FRAME_LENGTH = 8 * 1024 * 1024;
 
     private Class<?> genericClass; // deser byte array into object of generic class
 
+    private final int maxFrameLength;
+
+    // ids of the serializers accepted for bodies, null accepts all registered serializers
+    private final Set<Byte> serializers;
+
     public RpcDecoder(Class<?> genericClass) {
+        this(genericClass, DEFAULT_MAX_FRAME_LENGTH);
+    }
+
+    public RpcDecoder(Class<?> genericClass, int maxFrameLength) {
+        this(genericClass, maxFrameLength, null);
+    }
+
+    /**
+     * @param serializers ids of the serializers accepted for bodies, null accepts all registered serializers
+     */
+    public RpcDecoder(Class<?> genericClass, int maxFrameLength, Set<Byte> serializers) {
+        super(maxFrameLength, ProtocolConstant.LENGTH_FIELD_OFFSET, 4, 0, 0);
         this.genericClass = genericClass;
+        this.maxFrameLength = maxFrameLength;
+        this.serializers = serializers == null ? null : Set.copyOf(serializers);
     }
 
     @Override
-    protected void decode(ChannelHandlerContext channelHandlerContext, ByteBuf in, List<Object> out) throws Exception {
-        // the message head is 4 Bytes, so the readable bytes must > 4 bytes
-        if (in.readableBytes() < 4) {
-            return ;
+    protected Object decode(ChannelHandlerContext channelHandlerContext, ByteBuf in) throws Exception {
+        // a slice of the cumulation buffer holding exactly one frame, or null if the frame is not complete yet
+        ByteBuf frame = (ByteBuf) super.decode(channelHandlerContext, in);
+        if (frame == null) {
+            return null;
+        }
+        try {
+            return readFrame(frame, false);
+        } finally {
+            frame.release();
+        }
+    }
+
+    /**
+     * read one frame (header + body) from the buffer, the sub-frames of a batch frame are read recursively
+     * @param inBatch whether the frame is part of a batch frame
+     * @return RpcMessage, or RpcBatch for a batch frame
+     */
+    private Object readFrame(ByteBuf buf, boolean inBatch) throws Exception {
+        short magic = buf.readShort();
+        if (magic != ProtocolConstant.MAGIC) {
+            throw new CorruptedFrameException(String.format("illegal magic number: 0x%04x", magic));
+        }
+        byte version = buf.readByte();
+        if (version != ProtocolConstant.VERSION) {
+            throw new CorruptedFrameException(String.format("unsupported protocol version: %d", version));
+        }
+        byte messageType = buf.readByte();
+        byte serializerId = buf.readByte();
+        int compress = buf.readByte() & 0xff;
+        byte compressorId = (byte) (compress & ProtocolConstant.COMPRESSOR_MASK);
+        long requestId = buf.readLong();
+        int bodyLength = buf.readInt();
+        if (bodyLength < 0 || bodyLength > buf.readableBytes()) {
+            throw new CorruptedFrameException(String.format("illegal body length: %d", bodyLength));
+        }
+        int bodyEnd = buf.readerIndex() + bodyLength;
+
+        if (messageType == MessageType.BATCH) {
+            if (inBatch) {
+                throw new CorruptedFrameException("nested batch frame");
+            }
+            // the body is a sequence of complete frames, requestId holds their count
+            List<RpcMessage> messages = new ArrayList<>((int) Math.min(requestId, 1024));
+            while (buf.readerIndex() < bodyEnd) {
+                messages.add((RpcMessage) readFrame(buf, true));
+            }
+            return new RpcBatch(messages);
         }
 
-        // mark current readIndex
-        in.markReaderIndex();
-        // read the message head, the length of the message, it will increase readIndex
-        int dataLength = in.readInt();
-        // if readable bytes is less than data length, reset the readIndex and return
-        if (in.readableBytes() < dataLength) {
-            in.resetReaderIndex();
-            return;
+        RpcMessage message;
+        if (bodyLength == 0) {
+            // ping / pong, overloaded
+            message = (RpcMessage) genericClass.getDeclaredConstructor().newInstance();
+        } else {
+            // de-serialize with the serializer the sender used, if it is accepted
+            Serializer serializer = Serializers.get(serializerId);
+            if (serializers != null && !serializers.contains(serializer.getId())) {
+                throw new CorruptedFrameException(String.format("serializer not accepted: %d", serializerId));
+            }
+            InputStream body;
+            if ((compress & ProtocolConstant.COMPRESSED_FLAG) != 0) {
+                byte[] compressed = new byte[bodyLength];
+                buf.readBytes(compressed);
+                // the decompressed body is bounded by the same limit as a frame
+                body = new ByteArrayInputStream(Compressors.get(compressorId).decompress(compressed, maxFrameLength));
+            } else {
+                body = new ByteBufInputStream(buf, bodyLength);
+            }
+            message = (RpcMessage) serializer.deserialize(body, genericClass);
+            buf.readerIndex(bodyEnd);
         }
-        // de-serialize
-        byte[] body = new byte[dataLength];
-        in.readBytes(body);
-        Object obj = CustomSerializer.deserialize(body, genericClass);
-        out.add(obj);
+        message.setMessageType(messageType);
+        message.setSerializer(serializerId);
+        message.setCompressor(compressorId);
+        message.setRequestId(requestId);
+        message.setBatched(inBatch);
+        return message;
     }
 
 }
@@ -1,28 +1,118 @@
 package com.osako.codec;
+import com.osako.compress.Compressors;
+import com.osako.entity.MessageType;
+import com.osako.entity.RpcBatch;
+import com.osako.entity.RpcMessage;
+import com.osako.serializer.Serializer;
+import com.osako.serializer.Serializers;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToByteEncoder;
-import com.osako.serializer.CustomSerializer;
 
 /**
  * The encoder
+ * Writes the header (see ProtocolConstant) and serializes the body straight into the (pooled, direct) outbound ByteBuf,
+ * a body larger than compressThreshold is compressed when the message has a compressor,
+ * an RpcBatch is written as one batch frame whose body holds the frames of its messages
  */
 public class RpcEncoder extends MessageToByteEncoder {
 
+    public static final int DEFAULT_COMPRESS_THRESHOLD = 4096;
+
     private Class<?> genericClass;
 
+    // bodies up to this size are sent as they are
+    private final int compressThreshold;
+
     public RpcEncoder(Class<?> genericClass) {
+        this(genericClass, DEFAULT_COMPRESS_THRESHOLD);
+    }
+
+    public RpcEncoder(Class<?> genericClass, int compressThreshold) {
         this.genericClass = genericClass;
+        this.compressThreshold = compressThreshold;
+    }
+
+    /**
+     * ByteBufs are frames encoded beforehand (e.g. cached responses) and pass through as they are
+     */
+    @Override
+    public boolean acceptOutboundMessage(Object msg) {
+        return msg instanceof RpcBatch || genericClass.isInstance(msg);
     }
 
     @Override
     protected void encode(ChannelHandlerContext channelHandlerContext, Object in, ByteBuf out) throws Exception {
-        if (genericClass.isInstance(in)) {
-            // ser
-            byte[] data = CustomSerializer.serialize(in);
-            out.writeInt(data.length);
-            out.writeBytes(data);
+        if (in instanceof RpcBatch) {
+            writeBatch((RpcBatch) in, out);
+        } else if (genericClass.isInstance(in)) {
+            writeFrame((RpcMessage) in, out);
+        }
+    }
+
+    private void writeBatch(RpcBatch batch, ByteBuf out) throws Exception {
+        int headerIndex = out.writerIndex();
+        out.writeShort(ProtocolConstant.MAGIC);
+        out.writeByte(ProtocolConstant.VERSION);
+        out.writeByte(MessageType.BATCH);
+        out.writeByte(0);
+        out.writeByte(0);
+        // the request id field of a batch frame holds the number of messages
+        out.writeLong(batch.getMessages().size());
+        out.writeInt(0);
+        for (RpcMessage message : batch.getMessages()) {
+            writeFrame(message, out);
+        }
+        out.setInt(headerIndex + ProtocolConstant.LENGTH_FIELD_OFFSET,
+                out.writerIndex() - headerIndex - ProtocolConstant.HEADER_LENGTH);
+    }
+
+    /**
+     * write the frame of one message, called by the pipeline and by handlers that keep the encoded frame
+     * (no state is kept, may be called from any thread)
+     */
+    public void writeFrame(RpcMessage message, ByteBuf out) throws Exception {
+        // the serializer chosen by the sender of the message
+        Serializer serializer = Serializers.get(message.getSerializer());
+        int headerIndex = out.writerIndex();
+        out.writeShort(ProtocolConstant.MAGIC);
+        out.writeByte(ProtocolConstant.VERSION);
+        out.writeByte(message.getMessageType());
+        out.writeByte(serializer.getId());
+        out.writeByte(message.getCompressor());
+        out.writeLong(message.getRequestId());
+        // reserve the length field, fill it in once the body size is known
+        out.writeInt(0);
+        if (!MessageType.hasBody(message.getMessageType())) {
+            // ping / pong and overloaded answers carry no body
+            return;
+        }
+        // ser
+        int bodyIndex = out.writerIndex();
+        serializer.serialize(message, new ByteBufOutputStream(out));
+        int bodyLength = out.writerIndex() - bodyIndex;
+        if (message.getCompressor() != 0 && bodyLength > compressThreshold) {
+            bodyLength = compress(message.getCompressor(), out, headerIndex, bodyIndex, bodyLength);
+        }
+        out.setInt(headerIndex + ProtocolConstant.LENGTH_FIELD_OFFSET, bodyLength);
+    }
+
+    /**
+     * replace the serialized body with its compressed form, unless compression does not make it smaller
+     * @return length of the body in the frame
+     */
+    private static int compress(byte compressorId, ByteBuf out, int headerIndex, int bodyIndex, int bodyLength) throws Exception {
+        byte[] body = new byte[bodyLength];
+        out.getBytes(bodyIndex, body);
+        byte[] compressed = Compressors.get(compressorId).compress(body);
+        if (compressed.length >= bodyLength) {
+            return bodyLength;
         }
+        out.writerIndex(bodyIndex);
+        out.writeBytes(compressed);
+        out.setByte(headerIndex + ProtocolConstant.COMPRESS_OFFSET, compressorId | ProtocolConstant.COMPRESSED_FLAG);
+        return compressed.length;
     }
 
 }
@@ -0,0 +1,30 @@
+package com.osako.compress;
+
+import java.io.IOException;
+
+/**
+ * Compression SPI for frame bodies, the id of the compressor is written into the frame header so the peer knows
+ * how to read the body
+ * Built-in: LZ4 (1), Snappy (2), zstd (3)
+ * Other implementations are registered through META-INF/services/com.osako.compress.Compressor
+ * and must be present on both the client and the server
+ */
+public interface Compressor {
+
+    /**
+     * id written into the frame, unique among all compressors, 1 - 127
+     */
+    byte getId();
+
+    /**
+     * name used to choose the compressor in configuration, e.g. @RpcService(compressor = "lz4")
+     */
+    String getName();
+
+    byte[] compress(byte[] data) throws IOException;
+
+    /**
+     * @param maxLength upper bound of the decompressed length, a larger body is rejected instead of being inflated
+     */
+    byte[] decompress(byte[] data, int maxLength) throws IOException;
+}
@@ -0,0 +1,76 @@
+package com.osako.compress;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Registry of the compressors by id and name, the built-in ones plus those found through ServiceLoader
+ */
+public final class Compressors {
+
+    // indexed by id, a lookup per frame is an array read
+    private static final Compressor[] COMPRESSORS = new Compressor[128];
+
+    private static final Map<String, Compressor> BY_NAME = new HashMap<>();
+
+    static {
+        register(new Lz4Compressor());
+        register(new SnappyCompressor());
+        register(new ZstdCompressor());
+        for (Compressor compressor : ServiceLoader.load(Compressor.class)) {
+            register(compressor);
+        }
+    }
+
+    private Compressors() {
+    }
+
+    private static void register(Compressor compressor) {
+        byte id = compressor.getId();
+        if (id <= 0) {
+            throw new IllegalArgumentException(String.format("illegal compressor id %d of %s", id, compressor.getClass().getName()));
+        }
+        COMPRESSORS[id] = compressor;
+        BY_NAME.put(compressor.getName(), compressor);
+    }
+
+    /**
+     * @return ids of all registered compressors, advertised by the server in its registry metadata
+     */
+    public static Set<Byte> ids() {
+        Set<Byte> ids = new TreeSet<>();
+        for (Compressor compressor : COMPRESSORS) {
+            if (compressor != null) {
+                ids.add(compressor.getId());
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * @param id compressor id read from the frame, 0 means not compressed
+     * @return
+     */
+    public static Compressor get(byte id) {
+        Compressor compressor = id > 0 ? COMPRESSORS[id] : null;
+        if (compressor == null) {
+            throw new IllegalArgumentException(String.format("unknown compressor id: %d", id));
+        }
+        return compressor;
+    }
+
+    /**
+     * @param name e.g. "lz4", "snappy", "zstd"
+     * @return
+     */
+    public static Compressor get(String name) {
+        Compressor compressor = BY_NAME.get(name);
+        if (compressor == null) {
+            throw new IllegalArgumentException(String.format("unknown compressor: %s", name));
+        }
+        return compressor;
+    }
+}
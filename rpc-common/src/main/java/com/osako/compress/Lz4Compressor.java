@@ -0,0 +1,75 @@
+package com.osako.compress;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * LZ4 block compression, fastest of the built-in compressors
+ * The compressed body is the decompressed length (4 bytes) followed by the LZ4 block
+ * Bodies come from the network, so they are decompressed with the safe decompressor: it never writes past
+ * the declared length (itself bounded by the max frame length) whatever the block contains
+ */
+public class Lz4Compressor implements Compressor {
+
+    public static final byte ID = 1;
+
+    private static final LZ4Factory FACTORY = LZ4Factory.fastestInstance();
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "lz4";
+    }
+
+    @Override
+    public byte[] compress(byte[] data) {
+        LZ4Compressor compressor = FACTORY.fastCompressor();
+        byte[] out = new byte[4 + compressor.maxCompressedLength(data.length)];
+        writeInt(out, data.length);
+        int length = compressor.compress(data, 0, data.length, out, 4);
+        return Arrays.copyOf(out, 4 + length);
+    }
+
+    @Override
+    public byte[] decompress(byte[] data, int maxLength) throws IOException {
+        if (data.length < 4) {
+            throw new IOException("truncated lz4 body");
+        }
+        int length = readInt(data);
+        if (length < 0 || length > maxLength) {
+            throw new IOException(String.format("decompressed length %d exceeds %d", length, maxLength));
+        }
+        LZ4SafeDecompressor decompressor = FACTORY.safeDecompressor();
+        byte[] out = new byte[length];
+        int decompressed;
+        try {
+            decompressed = decompressor.decompress(data, 4, data.length - 4, out, 0, length);
+        } catch (LZ4Exception e) {
+            throw new IOException("malformed lz4 body", e);
+        }
+        if (decompressed != length) {
+            throw new IOException(String.format("lz4 body decompressed to %d bytes instead of %d", decompressed, length));
+        }
+        return out;
+    }
+
+    private static void writeInt(byte[] buf, int value) {
+        buf[0] = (byte) (value >>> 24);
+        buf[1] = (byte) (value >>> 16);
+        buf[2] = (byte) (value >>> 8);
+        buf[3] = (byte) value;
+    }
+
+    private static int readInt(byte[] buf) {
+        return (buf[0] & 0xff) << 24 | (buf[1] & 0xff) << 16 | (buf[2] & 0xff) << 8 | (buf[3] & 0xff);
+    }
+}
@@ -0,0 +1,37 @@
+package com.osako.compress;
+
+import org.xerial.snappy.Snappy;
+
+import java.io.IOException;
+
+/**
+ * Snappy
+ */
+public class SnappyCompressor implements Compressor {
+
+    public static final byte ID = 2;
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "snappy";
+    }
+
+    @Override
+    public byte[] compress(byte[] data) throws IOException {
+        return Snappy.compress(data);
+    }
+
+    @Override
+    public byte[] decompress(byte[] data, int maxLength) throws IOException {
+        int length = Snappy.uncompressedLength(data);
+        if (length < 0 || length > maxLength) {
+            throw new IOException(String.format("decompressed length %d exceeds %d", length, maxLength));
+        }
+        return Snappy.uncompress(data);
+    }
+}
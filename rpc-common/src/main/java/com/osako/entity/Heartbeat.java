@@ -0,0 +1,29 @@
+package com.osako.entity;
+
+/**
+ * Application level heartbeat (ping / pong frames) used to keep long-lived connections alive
+ * and to reap dead peers
+ */
+public final class Heartbeat {
+
+    // the client sends a ping when it has written nothing for this long
+    public static final int PING_INTERVAL_SECONDS = 30;
+
+    // a peer that has sent nothing (not even a ping / pong) for this long is considered dead
+    public static final int IDLE_TIMEOUT_SECONDS = 3 * PING_INTERVAL_SECONDS;
+
+    private Heartbeat() {
+    }
+
+    public static RpcRequest ping() {
+        RpcRequest request = new RpcRequest();
+        request.setMessageType(MessageType.HEARTBEAT);
+        return request;
+    }
+
+    public static RpcResponse pong() {
+        RpcResponse response = new RpcResponse();
+        response.setMessageType(MessageType.HEARTBEAT);
+        return response;
+    }
+}
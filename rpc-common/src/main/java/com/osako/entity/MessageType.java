@@ -0,0 +1,41 @@
+package com.osako.entity;
+
+/**
+ * Message types carried in the frame header
+ * New kinds of messages get a new type, the body format of the existing ones does not change
+ */
+public final class MessageType {
+
+    public static final byte REQUEST = 1;
+    public static final byte RESPONSE = 2;
+    // ping (client -> server) / pong (server -> client), no body
+    public static final byte HEARTBEAT = 3;
+    // request without response
+    public static final byte ONE_WAY = 4;
+    // sent by the client once the connection is established, answered with the method id dictionary of the server
+    public static final byte HANDSHAKE = 5;
+    // several complete frames packed into the body of one frame, see RpcBatch
+    public static final byte BATCH = 6;
+    // one element of a streaming result (server -> client), the response result holds the element
+    public static final byte STREAM = 7;
+    // end of a streaming result (server -> client), the response exception is set if the stream failed
+    public static final byte STREAM_END = 8;
+    // the client can take more elements of the stream (client -> server), the request parameters[0] holds how many
+    public static final byte CREDIT = 9;
+    // the client does not want the rest of the stream (client -> server)
+    public static final byte CANCEL = 10;
+    // the server is over its limits and did not process the request (server -> client), no body,
+    // the client may retry on another provider
+    public static final byte OVERLOADED = 11;
+
+    private MessageType() {
+    }
+
+    /**
+     * @param type
+     * @return false for the types that are complete with the header alone
+     */
+    public static boolean hasBody(byte type) {
+        return type != HEARTBEAT && type != OVERLOADED;
+    }
+}
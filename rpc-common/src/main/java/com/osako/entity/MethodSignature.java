@@ -0,0 +1,29 @@
+package com.osako.entity;
+
+/**
+ * Readable unique name of a service method: interfaceName[-version]#methodName(parameterType,...)
+ * Key of the method id dictionary the server sends in the handshake, so both sides must build it the same way
+ */
+public final class MethodSignature {
+
+    private MethodSignature() {
+    }
+
+    public static String of(String interfaceName, String serviceVersion, String methodName, Class<?>[] parameterTypes) {
+        StringBuilder builder = new StringBuilder(interfaceName);
+        String version = serviceVersion == null ? "" : serviceVersion.trim();
+        if (!version.isEmpty()) {
+            builder.append('-').append(version);
+        }
+        builder.append('#').append(methodName).append('(');
+        if (parameterTypes != null) {
+            for (int i = 0; i < parameterTypes.length; i++) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+                builder.append(parameterTypes[i].getName());
+            }
+        }
+        return builder.append(')').toString();
+    }
+}
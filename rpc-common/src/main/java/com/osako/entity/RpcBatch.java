@@ -0,0 +1,20 @@
+package com.osako.entity;
+
+import java.util.List;
+
+/**
+ * Several messages sent as one batch frame (one write / syscall instead of one per message)
+ * Only exists inside the pipeline, BatchSplitter passes the messages on one by one
+ */
+public class RpcBatch {
+
+    private final List<RpcMessage> messages;
+
+    public RpcBatch(List<RpcMessage> messages) {
+        this.messages = messages;
+    }
+
+    public List<RpcMessage> getMessages() {
+        return messages;
+    }
+}
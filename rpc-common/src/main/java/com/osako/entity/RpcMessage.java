@@ -0,0 +1,62 @@
+package com.osako.entity;
+
+import java.io.Serializable;
+
+/**
+ * Base of RpcRequest and RpcResponse
+ * Transient fields are carried in the frame header instead of the serialized body
+ */
+public abstract class RpcMessage implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private transient long requestId; // uniquely marks the request on its connection, the response carries the same id
+    private transient byte messageType; // see MessageType
+    private transient byte serializer; // id of the serializer of the body, 0 means the default
+    private transient byte compressor; // id of the compressor for large bodies, 0 means no compression
+    private transient boolean batched; // received as part of a batch frame, the answer may be batched as well
+
+    public long getRequestId() {
+        return requestId;
+    }
+
+    public void setRequestId(long requestId) {
+        this.requestId = requestId;
+    }
+
+    public byte getMessageType() {
+        return messageType;
+    }
+
+    public void setMessageType(byte messageType) {
+        this.messageType = messageType;
+    }
+
+    public boolean isHeartbeat() {
+        return messageType == MessageType.HEARTBEAT;
+    }
+
+    public byte getSerializer() {
+        return serializer;
+    }
+
+    public void setSerializer(byte serializer) {
+        this.serializer = serializer;
+    }
+
+    public byte getCompressor() {
+        return compressor;
+    }
+
+    public void setCompressor(byte compressor) {
+        this.compressor = compressor;
+    }
+
+    public boolean isBatched() {
+        return batched;
+    }
+
+    public void setBatched(boolean batched) {
+        this.batched = batched;
+    }
+}
@@ -1,21 +1,30 @@
 package com.osako.entity;
 
-public class RpcRequest {
+public class RpcRequest extends RpcMessage {
 
-    private String requestId; // uniquely marks the request
+    private static final long serialVersionUID = 1L;
+
+    // id of the method from the handshake dictionary of the server, 0 means the method is identified by the names below
+    private int methodId;
     private String interfaceName;
     private String serviceVersion;
     private String methodName;
     private Class<?>[] parameterTypes;
     private Object[] parameters;
+    // time left for the call when the request was sent (ms), 0 means none; relative so that the clocks of
+    // the hosts need not be in sync, the server counts it from receiving the request
+    private long timeoutMillis;
 
+    public RpcRequest() {
+        setMessageType(MessageType.REQUEST);
+    }
 
-    public String getRequestId() {
-        return requestId;
+    public int getMethodId() {
+        return methodId;
     }
 
-    public void setRequestId(String requestId) {
-        this.requestId = requestId;
+    public void setMethodId(int methodId) {
+        this.methodId = methodId;
     }
 
     public String getInterfaceName() {
@@ -34,6 +43,14 @@ public class RpcRequest {
         this.serviceVersion = serviceVersion;
     }
 
+    /**
+     * @return the name the service is discovered by, interface name-version, or the interface name without a version
+     */
+    public String getServiceName() {
+        String version = serviceVersion != null ? serviceVersion.trim() : "";
+        return version.isEmpty() ? interfaceName : interfaceName + "-" + version;
+    }
+
     public String getMethodName() {
         return methodName;
     }
@@ -57,4 +74,12 @@ public class RpcRequest {
     public void setParameters(Object[] parameters) {
         this.parameters = parameters;
     }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
 }
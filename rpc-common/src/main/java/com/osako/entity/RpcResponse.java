@@ -1,21 +1,18 @@
 package com.osako.entity;
 
-public class RpcResponse {
+public class RpcResponse extends RpcMessage {
+
+    private static final long serialVersionUID = 1L;
 
-    private String requestId; // response to request with requestId
     private Exception exception;
     private Object result;
 
-    public boolean hasException() {
-        return exception != null;
+    public RpcResponse() {
+        setMessageType(MessageType.RESPONSE);
     }
 
-    public String getRequestId() {
-        return requestId;
-    }
-
-    public void setRequestId(String requestId) {
-        this.requestId = requestId;
+    public boolean hasException() {
+        return exception != null;
     }
 
     public Throwable getException() {
@@ -0,0 +1,13 @@
+package com.osako.exception;
+
+/**
+ * The circuit breakers of all providers of the called method are open, the call was not sent
+ */
+public class RpcCircuitOpenException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public RpcCircuitOpenException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,29 @@
+package com.osako.exception;
+
+/**
+ * Stands in for an exception the serializer of the response could not encode, carries the name of its class and its message
+ */
+public class RpcException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String className;
+
+    public RpcException(String className, String message) {
+        super(message);
+        this.className = className;
+    }
+
+    /**
+     * @return name of the class of the original exception
+     */
+    public String getClassName() {
+        return className;
+    }
+
+    @Override
+    public String toString() {
+        String message = getLocalizedMessage();
+        return message != null ? className + ": " + message : className;
+    }
+}
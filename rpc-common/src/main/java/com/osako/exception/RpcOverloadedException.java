@@ -0,0 +1,13 @@
+package com.osako.exception;
+
+/**
+ * The server was over its limits and rejected the request without processing it, so it is safe to retry elsewhere
+ */
+public class RpcOverloadedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public RpcOverloadedException(String message) {
+        super(message);
+    }
+}
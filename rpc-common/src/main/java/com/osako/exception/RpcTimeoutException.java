@@ -0,0 +1,13 @@
+package com.osako.exception;
+
+/**
+ * The deadline of a call passed before its response arrived
+ */
+public class RpcTimeoutException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public RpcTimeoutException(String message) {
+        super(message);
+    }
+}
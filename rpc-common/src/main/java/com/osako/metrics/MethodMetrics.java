@@ -0,0 +1,211 @@
+package com.osako.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of one service method: call / error counts, calls in flight and latency histograms
+ * Recording is lock-free (striped LongAdder counters, HdrHistogram Recorder), so it is cheap on the hot path,
+ * the recorded latencies are only aggregated when a snapshot is taken
+ */
+public final class MethodMetrics implements MethodMetricsMBean {
+
+    // 3 significant digits, percentiles are accurate to 0.1%
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private final String service;
+    private final String method;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder inFlight = new LongAdder();
+    // requests pending on the whole side, shared with the other methods of the registry
+    private final LongAdder pendingRequests;
+
+    // whole call: request sent -> response received on the client, request received -> response written on the server
+    private final Timer latency = new Timer();
+    // server only: waiting for a business thread, and running the service method
+    private final Timer queueTime;
+    private final Timer executionTime;
+
+    MethodMetrics(String service, String method, LongAdder pendingRequests, boolean server) {
+        this.service = service;
+        this.method = method;
+        this.pendingRequests = pendingRequests;
+        this.queueTime = server ? new Timer() : null;
+        this.executionTime = server ? new Timer() : null;
+    }
+
+    /**
+     * a call starts
+     * @return start time of the call, to be passed to end()
+     */
+    public long begin() {
+        calls.increment();
+        inFlight.increment();
+        pendingRequests.increment();
+        return System.nanoTime();
+    }
+
+    /**
+     * the call started at beginNanos has completed
+     * @param beginNanos
+     * @param failed
+     */
+    public void end(long beginNanos, boolean failed) {
+        inFlight.decrement();
+        pendingRequests.decrement();
+        if (failed) {
+            errors.increment();
+        }
+        latency.record(System.nanoTime() - beginNanos);
+    }
+
+    /**
+     * the call received at beginNanos, whose service method started running at startNanos, has completed
+     * @param beginNanos
+     * @param startNanos
+     * @param failed
+     */
+    public void end(long beginNanos, long startNanos, boolean failed) {
+        long now = System.nanoTime();
+        if (queueTime != null) {
+            queueTime.record(startNanos - beginNanos);
+            executionTime.record(now - startNanos);
+        }
+        inFlight.decrement();
+        pendingRequests.decrement();
+        if (failed) {
+            errors.increment();
+        }
+        latency.record(now - beginNanos);
+    }
+
+    /**
+     * a call that is only counted, one-way calls and streams have no single response to time
+     */
+    public void count() {
+        calls.increment();
+    }
+
+    /**
+     * a call counted with count() failed
+     */
+    public void error() {
+        errors.increment();
+    }
+
+    /**
+     * counts and percentiles of all calls recorded so far
+     * @return
+     */
+    public MetricsSnapshot snapshot() {
+        Histogram latency = this.latency.total();
+        Histogram queueTime = this.queueTime != null ? this.queueTime.total() : null;
+        Histogram executionTime = this.executionTime != null ? this.executionTime.total() : null;
+        return new MetricsSnapshot(service, method, calls.sum(), errors.sum(), inFlight.sum(),
+                latency.getValueAtPercentile(50), latency.getValueAtPercentile(99),
+                latency.getValueAtPercentile(99.9), latency.getMaxValue(),
+                queueTime != null ? queueTime.getValueAtPercentile(50) : 0,
+                queueTime != null ? queueTime.getValueAtPercentile(99) : 0,
+                executionTime != null ? executionTime.getValueAtPercentile(50) : 0,
+                executionTime != null ? executionTime.getValueAtPercentile(99) : 0);
+    }
+
+    /**
+     * latency at the percentile over all calls recorded so far, aggregates the recorded latencies like snapshot()
+     * @param percentile e.g. 95
+     * @return nanoseconds
+     */
+    public long getLatencyAtPercentile(double percentile) {
+        return latency.total().getValueAtPercentile(percentile);
+    }
+
+    @Override
+    public String getService() {
+        return service;
+    }
+
+    @Override
+    public String getMethod() {
+        return method;
+    }
+
+    @Override
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getInFlight() {
+        return inFlight.sum();
+    }
+
+    @Override
+    public long getLatencyP50() {
+        return latency.total().getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getLatencyP99() {
+        return latency.total().getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getLatencyP999() {
+        return latency.total().getValueAtPercentile(99.9);
+    }
+
+    @Override
+    public long getLatencyMax() {
+        return latency.total().getMaxValue();
+    }
+
+    @Override
+    public long getQueueTimeP50() {
+        return queueTime != null ? queueTime.total().getValueAtPercentile(50) : 0;
+    }
+
+    @Override
+    public long getQueueTimeP99() {
+        return queueTime != null ? queueTime.total().getValueAtPercentile(99) : 0;
+    }
+
+    @Override
+    public long getExecutionTimeP50() {
+        return executionTime != null ? executionTime.total().getValueAtPercentile(50) : 0;
+    }
+
+    @Override
+    public long getExecutionTimeP99() {
+        return executionTime != null ? executionTime.total().getValueAtPercentile(99) : 0;
+    }
+
+    /**
+     * Latency histogram written through a Recorder by any number of threads, the readers drain the recorded
+     * interval into the running total under a lock
+     */
+    private static final class Timer {
+
+        private final Recorder recorder = new Recorder(SIGNIFICANT_DIGITS);
+        private final Histogram total = new Histogram(SIGNIFICANT_DIGITS);
+        private Histogram interval;
+
+        void record(long nanos) {
+            recorder.recordValue(Math.max(nanos, 0));
+        }
+
+        synchronized Histogram total() {
+            interval = recorder.getIntervalHistogram(interval);
+            total.add(interval);
+            return total.copy();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.osako.metrics;
+
+/**
+ * JMX view of the metrics of one service method, times are in nanoseconds
+ */
+public interface MethodMetricsMBean {
+
+    String getService();
+
+    String getMethod();
+
+    long getCalls();
+
+    long getErrors();
+
+    long getInFlight();
+
+    long getLatencyP50();
+
+    long getLatencyP99();
+
+    long getLatencyP999();
+
+    long getLatencyMax();
+
+    long getQueueTimeP50();
+
+    long getQueueTimeP99();
+
+    long getExecutionTimeP50();
+
+    long getExecutionTimeP99();
+}
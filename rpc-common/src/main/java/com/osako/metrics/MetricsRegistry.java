@@ -0,0 +1,148 @@
+package com.osako.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of one side of the framework (client or server): the metrics of every called service method,
+ * open connections and pending requests
+ * Everything is registered as MBeans under the domain com.osako.rpc, and can also be pulled with snapshot()
+ */
+public final class MetricsRegistry implements MetricsRegistryMBean {
+
+    public static final String JMX_DOMAIN = "com.osako.rpc";
+
+    private static final MetricsRegistry CLIENT = new MetricsRegistry("client", false);
+    private static final MetricsRegistry SERVER = new MetricsRegistry("server", true);
+
+    private final String side;
+    private final boolean server;
+
+    // method signature -> metrics, see MethodSignature
+    private final Map<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+
+    private final LongAdder connections = new LongAdder();
+    private final LongAdder pendingRequests = new LongAdder();
+
+    private MetricsRegistry(String side, boolean server) {
+        this.side = side;
+        this.server = server;
+        register(JMX_DOMAIN + ":side=" + side + ",type=Connections", this);
+    }
+
+    /**
+     * metrics of the calls made through RpcProxy
+     */
+    public static MetricsRegistry client() {
+        return CLIENT;
+    }
+
+    /**
+     * metrics of the requests handled by RpcServer
+     */
+    public static MetricsRegistry server() {
+        return SERVER;
+    }
+
+    /**
+     * metrics of the method, created and registered on first use
+     * @param signature interfaceName[-version]#methodName(parameterType,...), see MethodSignature
+     * @return
+     */
+    public MethodMetrics method(String signature) {
+        MethodMetrics metrics = methods.get(signature);
+        return metrics != null ? metrics : methods.computeIfAbsent(signature, this::newMethodMetrics);
+    }
+
+    public void connectionOpened() {
+        connections.increment();
+    }
+
+    public void connectionClosed() {
+        connections.decrement();
+    }
+
+    @Override
+    public long getConnections() {
+        return connections.sum();
+    }
+
+    /**
+     * requests sent and not answered yet on the client, received and not answered yet on the server
+     */
+    @Override
+    public long getPendingRequests() {
+        return pendingRequests.sum();
+    }
+
+    /**
+     * snapshots of all methods called so far
+     * @return
+     */
+    public List<MetricsSnapshot> snapshot() {
+        List<MetricsSnapshot> snapshots = new ArrayList<>(methods.size());
+        for (MethodMetrics metrics : methods.values()) {
+            snapshots.add(metrics.snapshot());
+        }
+        return snapshots;
+    }
+
+    /**
+     * register another MBean of a method on this side, next to the metrics of the method
+     * @param type e.g. "ResultCache"
+     * @param signature see MethodSignature
+     * @param mbean
+     */
+    public void registerMBean(String type, String signature, Object mbean) {
+        register(objectName(type, signature), mbean);
+    }
+
+    /**
+     * register an MBean of this side that does not belong to a single method
+     * @param type e.g. "ResponseCache"
+     * @param mbean
+     */
+    public void registerMBean(String type, Object mbean) {
+        register(JMX_DOMAIN + ":side=" + side + ",type=" + type, mbean);
+    }
+
+    private MethodMetrics newMethodMetrics(String signature) {
+        MethodMetrics metrics = new MethodMetrics(serviceOf(signature), methodOf(signature), pendingRequests, server);
+        register(objectName("Method", signature), metrics);
+        return metrics;
+    }
+
+    private String objectName(String type, String signature) {
+        return JMX_DOMAIN + ":side=" + side + ",type=" + type + ",service=" + ObjectName.quote(serviceOf(signature))
+                + ",method=" + ObjectName.quote(methodOf(signature));
+    }
+
+    private static String serviceOf(String signature) {
+        int separator = signature.indexOf('#');
+        return separator < 0 ? signature : signature.substring(0, separator);
+    }
+
+    private static String methodOf(String signature) {
+        int separator = signature.indexOf('#');
+        return separator < 0 ? "" : signature.substring(separator + 1);
+    }
+
+    private static void register(String name, Object mbean) {
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(name);
+            if (!mBeanServer.isRegistered(objectName)) {
+                mBeanServer.registerMBean(mbean, objectName);
+            }
+        } catch (JMException e) {
+            // the metrics are still recorded and available through snapshot()
+        }
+    }
+}
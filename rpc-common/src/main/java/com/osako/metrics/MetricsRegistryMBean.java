@@ -0,0 +1,11 @@
+package com.osako.metrics;
+
+/**
+ * JMX view of the connection level metrics of one side (client or server)
+ */
+public interface MetricsRegistryMBean {
+
+    long getConnections();
+
+    long getPendingRequests();
+}
@@ -0,0 +1,99 @@
+package com.osako.metrics;
+
+/**
+ * Immutable point in time view of the metrics of one service method, times are in nanoseconds
+ * The percentiles cover all calls since start, queue / execution times are only measured on the server side
+ */
+public final class MetricsSnapshot {
+
+    private final String service;
+    private final String method;
+    private final long calls;
+    private final long errors;
+    private final long inFlight;
+    private final long latencyP50;
+    private final long latencyP99;
+    private final long latencyP999;
+    private final long latencyMax;
+    private final long queueTimeP50;
+    private final long queueTimeP99;
+    private final long executionTimeP50;
+    private final long executionTimeP99;
+
+    MetricsSnapshot(String service, String method, long calls, long errors, long inFlight,
+                    long latencyP50, long latencyP99, long latencyP999, long latencyMax,
+                    long queueTimeP50, long queueTimeP99, long executionTimeP50, long executionTimeP99) {
+        this.service = service;
+        this.method = method;
+        this.calls = calls;
+        this.errors = errors;
+        this.inFlight = inFlight;
+        this.latencyP50 = latencyP50;
+        this.latencyP99 = latencyP99;
+        this.latencyP999 = latencyP999;
+        this.latencyMax = latencyMax;
+        this.queueTimeP50 = queueTimeP50;
+        this.queueTimeP99 = queueTimeP99;
+        this.executionTimeP50 = executionTimeP50;
+        this.executionTimeP99 = executionTimeP99;
+    }
+
+    public String getService() {
+        return service;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public long getCalls() {
+        return calls;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public long getInFlight() {
+        return inFlight;
+    }
+
+    public long getLatencyP50() {
+        return latencyP50;
+    }
+
+    public long getLatencyP99() {
+        return latencyP99;
+    }
+
+    public long getLatencyP999() {
+        return latencyP999;
+    }
+
+    public long getLatencyMax() {
+        return latencyMax;
+    }
+
+    public long getQueueTimeP50() {
+        return queueTimeP50;
+    }
+
+    public long getQueueTimeP99() {
+        return queueTimeP99;
+    }
+
+    public long getExecutionTimeP50() {
+        return executionTimeP50;
+    }
+
+    public long getExecutionTimeP99() {
+        return executionTimeP99;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s#%s calls=%d errors=%d inFlight=%d latency(us) p50=%.1f p99=%.1f p999=%.1f max=%.1f",
+                service, method, calls, errors, inFlight,
+                latencyP50 / 1e3, latencyP99 / 1e3, latencyP999 / 1e3, latencyMax / 1e3);
+    }
+}
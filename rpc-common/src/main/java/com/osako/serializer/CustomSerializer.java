@@ -3,9 +3,9 @@ import com.dyuproject.protostuff.LinkedBuffer;
 import com.dyuproject.protostuff.Schema;
 import com.dyuproject.protostuff.runtime.RuntimeSchema;
 import com.dyuproject.protostuff.ProtostuffIOUtil;
-import org.objenesis.Objenesis;
-import org.objenesis.ObjenesisStd;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -14,19 +14,18 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class CustomSerializer {
 
-    private static Map<Class<?>, Schema<?>> cachedSchema = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, Schema<?>> cachedSchema = new ConcurrentHashMap<>();
 
-    // use Objenesis to initialise,
-    private static Objenesis objenesis = new ObjenesisStd(true);
-    // private static ObjectInstantiator instantiator = objenesis.getInstantiatorOf()
+    // Re-use (manage) one buffer per thread to avoid allocating on every serialization
+    private static final ThreadLocal<LinkedBuffer> BUFFER =
+            ThreadLocal.withInitial(() -> LinkedBuffer.allocate(LinkedBuffer.DEFAULT_BUFFER_SIZE));
 
+    @SuppressWarnings("unchecked")
     private static <T> Schema<T> getSchema(Class<T> cls) {
         Schema<T> schema = (Schema<T>) cachedSchema.get(cls);
         if (schema == null) {
-            //这个schema通过RuntimeSchema进行懒创建并缓存
-            //所以可以一直调用RuntimeSchema.getSchema(),这个方法是线程安全的
-            schema = RuntimeSchema.createFrom(cls);
-            cachedSchema.put(cls, schema);
+            //这个schema通过RuntimeSchema进行懒创建并缓存，computeIfAbsent 保证每个类只创建一次
+            schema = (Schema<T>) cachedSchema.computeIfAbsent(cls, RuntimeSchema::createFrom);
         }
         return schema;
     }
@@ -37,10 +36,10 @@ public class CustomSerializer {
      * @param <T>
      * @return
      */
+    @SuppressWarnings("unchecked")
     public static <T> byte[] serialize(T obj) {
         Class<T> cls = (Class<T>) obj.getClass();
-        // Re-use (manage) this buffer to avoid allocating on every serialization
-        LinkedBuffer buffer = LinkedBuffer.allocate(LinkedBuffer.DEFAULT_BUFFER_SIZE);
+        LinkedBuffer buffer = BUFFER.get();
         try {
             Schema<T> schema = getSchema(cls);
             return ProtostuffIOUtil.toByteArray(obj, schema, buffer);
@@ -51,13 +50,48 @@ public class CustomSerializer {
         }
     }
 
+    /**
+     * ser obj --> stream (e.g. a ByteBufOutputStream writing straight into the outbound ByteBuf)
+     * @param obj
+     * @param out
+     * @param <T>
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> void serialize(T obj, OutputStream out) {
+        Class<T> cls = (Class<T>) obj.getClass();
+        LinkedBuffer buffer = BUFFER.get();
+        try {
+            Schema<T> schema = getSchema(cls);
+            ProtostuffIOUtil.writeTo(out, obj, schema, buffer);
+        } catch (Exception e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    /**
+     * deser stream --> obj (e.g. a ByteBufInputStream reading straight from the inbound ByteBuf)
+     */
+    public static <T> T deserialize(InputStream in, Class<T> cls) {
+        try {
+            Schema<T> schema = getSchema(cls);
+            // the runtime schema instantiates the message itself, no Objenesis round trip
+            T message = schema.newMessage();
+            ProtostuffIOUtil.mergeFrom(in, message, schema);
+            return message;
+        } catch (Exception e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
     /**
      * deser byte[] --> obj
      */
     public static <T> T deserialize(byte[] data, Class<T> cls) {
         try {
-            T message = objenesis.newInstance(cls);
             Schema<T> schema = getSchema(cls);
+            T message = schema.newMessage();
             ProtostuffIOUtil.mergeFrom(data, message, schema);
             return message;
         } catch (Exception e) {
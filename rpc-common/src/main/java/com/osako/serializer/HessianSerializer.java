@@ -0,0 +1,62 @@
+package com.osako.serializer;
+
+import com.caucho.hessian.io.ClassFactory;
+import com.caucho.hessian.io.Hessian2Input;
+import com.caucho.hessian.io.Hessian2Output;
+import com.caucho.hessian.io.SerializerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Hessian 2, cross-language, the serialized classes must implement Serializable
+ * Reading a stream instantiates the classes named in it, so the class names are checked against an allowlist:
+ * by default only the JDK value classes and collections and the classes of the framework,
+ * the classes of the services' parameters and results have to be allowed with allow()
+ */
+public class HessianSerializer implements Serializer {
+
+    public static final byte ID = 3;
+
+    // shared by all streams, caches the (de)serializers of the classes; thread safe
+    private static final SerializerFactory FACTORY = new SerializerFactory();
+
+    static {
+        ClassFactory classFactory = FACTORY.getClassFactory();
+        classFactory.setWhitelist(true);
+        for (String pattern : new String[]{"java.lang.*", "java.util.*", "java.time.*", "java.math.*",
+                "com.osako.entity.*", "com.osako.exception.*"}) {
+            classFactory.allow(pattern);
+        }
+    }
+
+    /**
+     * accept the classes matching the pattern when reading, e.g. com.example.api.*
+     * must be called before the first call, a class rejected once stays rejected
+     * @param pattern class name, * matches any characters
+     */
+    public static void allow(String pattern) {
+        FACTORY.getClassFactory().allow(pattern);
+    }
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public void serialize(Object obj, OutputStream out) throws IOException {
+        Hessian2Output output = new Hessian2Output(out);
+        output.setSerializerFactory(FACTORY);
+        output.writeObject(obj);
+        output.flush();
+    }
+
+    @Override
+    public <T> T deserialize(InputStream in, Class<T> cls) throws IOException {
+        Hessian2Input input = new Hessian2Input(in);
+        input.setSerializerFactory(FACTORY);
+        return cls.cast(input.readObject(cls));
+    }
+}
@@ -0,0 +1,61 @@
+package com.osako.serializer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+/**
+ * Java built-in serialization, the slowest but needs no schema, the serialized classes must implement Serializable
+ * Reading a stream instantiates the classes named in it, so every stream is checked by an ObjectInputFilter:
+ * by default only the JDK value classes and collections and the classes of the framework are accepted,
+ * the classes of the services' parameters and results have to be allowed with setFilter()
+ */
+public class JdkSerializer implements Serializer {
+
+    public static final byte ID = 4;
+
+    /**
+     * classes accepted by the default filter, prepend patterns of the application's classes to accept them as well, e.g.
+     * ObjectInputFilter.Config.createFilter("com.example.api.*;" + JdkSerializer.DEFAULT_FILTER_PATTERN)
+     */
+    public static final String DEFAULT_FILTER_PATTERN = "maxdepth=64;maxrefs=100000;maxarray=1000000;"
+            + "java.lang.*;java.util.*;java.time.*;java.math.*;com.osako.entity.*;com.osako.exception.*;!*";
+
+    private static volatile ObjectInputFilter filter = ObjectInputFilter.Config.createFilter(DEFAULT_FILTER_PATTERN);
+
+    /**
+     * @param filter checks the classes and graph limits of every stream read, must reject the classes not expected
+     */
+    public static void setFilter(ObjectInputFilter filter) {
+        if (filter == null) {
+            throw new IllegalArgumentException("filter must not be null");
+        }
+        JdkSerializer.filter = filter;
+    }
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public void serialize(Object obj, OutputStream out) throws IOException {
+        ObjectOutputStream output = new ObjectOutputStream(out);
+        output.writeObject(obj);
+        output.flush();
+    }
+
+    @Override
+    public <T> T deserialize(InputStream in, Class<T> cls) throws IOException {
+        try {
+            ObjectInputStream input = new ObjectInputStream(in);
+            input.setObjectInputFilter(filter);
+            return cls.cast(input.readObject());
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+}
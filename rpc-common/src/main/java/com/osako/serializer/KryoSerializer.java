@@ -0,0 +1,314 @@
+package com.osako.serializer;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.util.DefaultInstantiatorStrategy;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.util.ObjectMap;
+import com.osako.entity.RpcRequest;
+import com.osako.entity.RpcResponse;
+import com.osako.exception.RpcCircuitOpenException;
+import com.osako.exception.RpcException;
+import com.osako.exception.RpcOverloadedException;
+import com.osako.exception.RpcTimeoutException;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Kryo, Kryo instances are not thread safe so every thread has its own instance and buffers
+ * Registration is required: a stream can only name registered classes, so reading it never instantiates
+ * a class the application did not expect. The messages, JDK value classes, collections, the framework's exceptions and
+ * common JDK exceptions are registered here, the classes of the services' parameters, results and exceptions have to be
+ * registered with register(), with the same ids on the clients and the servers
+ * Exceptions are written as message, stack trace, cause and suppressed exceptions; an exception of a class that is not
+ * registered is sent as an RpcException carrying the name of its class, so a failed call always gets its response
+ */
+public class KryoSerializer implements Serializer {
+
+    public static final byte ID = 2;
+
+    // ids below are taken by the classes Kryo registers itself and the built-in registrations
+    public static final int MIN_APPLICATION_ID = 1000;
+
+    private static final Class<?>[] BUILT_IN = {
+            RpcRequest.class, RpcResponse.class, Object.class, Object[].class, Class.class, Class[].class, String[].class,
+            int[].class, long[].class, double[].class, float[].class, short[].class, char[].class, boolean[].class,
+            ArrayList.class, LinkedList.class, HashMap.class, LinkedHashMap.class, TreeMap.class, ConcurrentHashMap.class,
+            HashSet.class, LinkedHashSet.class, TreeSet.class, Collections.emptyList().getClass(),
+            Collections.emptyMap().getClass(), Collections.emptySet().getClass(), Collections.singletonList(0).getClass(),
+            Date.class, BigDecimal.class, BigInteger.class,
+            // parameter types
+            Collection.class, List.class, Set.class, Map.class, SortedSet.class, SortedMap.class, Queue.class, Deque.class,
+            // exceptions, appended so the ids above stay the same
+            StackTraceElement.class, StackTraceElement[].class,
+            RpcException.class, RpcTimeoutException.class, RpcOverloadedException.class, RpcCircuitOpenException.class,
+            Throwable.class, Exception.class, RuntimeException.class, Error.class, IllegalArgumentException.class,
+            IllegalStateException.class, NullPointerException.class, UnsupportedOperationException.class,
+            IndexOutOfBoundsException.class, ArithmeticException.class, ClassCastException.class,
+            ConcurrentModificationException.class, NoSuchElementException.class, IOException.class, TimeoutException.class
+    };
+
+    private static final int FIRST_BUILT_IN_ID = 100;
+
+    // registrations of the application, applied to the Kryo instance of every thread before its next use
+    private static final List<Registration> REGISTRATIONS = new CopyOnWriteArrayList<>();
+
+    private static final ThreadLocal<RegisteredKryo> KRYO = ThreadLocal.withInitial(() -> {
+        Kryo kryo = new Kryo();
+        kryo.setRegistrationRequired(true);
+        kryo.setReferences(true);
+        // classes without a no-arg constructor (e.g. exceptions) are instantiated without calling one
+        kryo.setInstantiatorStrategy(new DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
+        // the fields of Throwable and StackTraceElement cannot be reached by reflection, they get their own serializers
+        kryo.addDefaultSerializer(RpcResponse.class, new ResponseSerializer());
+        kryo.addDefaultSerializer(Throwable.class, new ThrowableSerializer());
+        kryo.addDefaultSerializer(StackTraceElement.class, new StackTraceElementSerializer());
+        for (int i = 0; i < BUILT_IN.length; i++) {
+            kryo.register(BUILT_IN[i], FIRST_BUILT_IN_ID + i);
+        }
+        return new RegisteredKryo(kryo);
+    });
+
+    private static final ThreadLocal<Output> OUTPUT = ThreadLocal.withInitial(() -> new Output(4096));
+
+    private static final ThreadLocal<Input> INPUT = ThreadLocal.withInitial(() -> new Input(4096));
+
+    /**
+     * register a class of the application, must be done with the same id on both sides before the first call using it
+     * @param type
+     * @param id MIN_APPLICATION_ID or greater
+     */
+    public static void register(Class<?> type, int id) {
+        if (id < MIN_APPLICATION_ID) {
+            throw new IllegalArgumentException(String.format("registration id of %s below %d: %d",
+                    type.getName(), MIN_APPLICATION_ID, id));
+        }
+        REGISTRATIONS.add(new Registration(type, id));
+    }
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public void serialize(Object obj, OutputStream out) {
+        Output output = OUTPUT.get();
+        output.setOutputStream(out);
+        try {
+            KRYO.get().kryo().writeObject(output, obj);
+            output.flush();
+        } finally {
+            output.setOutputStream(null);
+        }
+    }
+
+    @Override
+    public <T> T deserialize(InputStream in, Class<T> cls) {
+        Input input = INPUT.get();
+        input.setInputStream(in);
+        try {
+            return KRYO.get().kryo().readObject(input, cls);
+        } finally {
+            input.setInputStream(null);
+        }
+    }
+
+    /**
+     * @return the exception itself if its class is registered, otherwise an RpcException in its place
+     * (the same one for every occurrence of the exception in the graph being written)
+     */
+    private static Throwable encodable(Kryo kryo, Throwable throwable) {
+        if (throwable == null || kryo.getClassResolver().getRegistration(throwable.getClass()) != null) {
+            return throwable;
+        }
+        // Kryo returns the graph context as a raw ObjectMap
+        @SuppressWarnings("unchecked")
+        ObjectMap<Object, Object> context = kryo.getGraphContext();
+        RpcException substitute = (RpcException) context.get(throwable);
+        if (substitute == null) {
+            substitute = new RpcException(throwable.getClass().getName(), throwable.getMessage());
+            substitute.setStackTrace(throwable.getStackTrace());
+            context.put(throwable, substitute);
+            // cause and suppressed exceptions are substituted as well when they are written
+            if (throwable.getCause() != null) {
+                substitute.initCause(throwable.getCause());
+            }
+            for (Throwable suppressed : throwable.getSuppressed()) {
+                substitute.addSuppressed(suppressed);
+            }
+        }
+        return substitute;
+    }
+
+    /**
+     * result and exception of a response, the exception is replaced when its class is not registered
+     */
+    private static final class ResponseSerializer extends com.esotericsoftware.kryo.Serializer<RpcResponse> {
+
+        @Override
+        public void write(Kryo kryo, Output output, RpcResponse response) {
+            kryo.writeClassAndObject(output, response.getResult());
+            kryo.writeClassAndObject(output, encodable(kryo, response.getException()));
+        }
+
+        @Override
+        public RpcResponse read(Kryo kryo, Input input, Class<? extends RpcResponse> type) {
+            RpcResponse response = new RpcResponse();
+            kryo.reference(response);
+            response.setResult(kryo.readClassAndObject(input));
+            response.setException((Exception) kryo.readClassAndObject(input));
+            return response;
+        }
+    }
+
+    /**
+     * message, stack trace, cause and suppressed exceptions of a registered exception
+     * It is created through its (String) constructor, or without the message when it has none
+     */
+    private static final class ThrowableSerializer extends com.esotericsoftware.kryo.Serializer<Throwable> {
+
+        @Override
+        public void write(Kryo kryo, Output output, Throwable throwable) {
+            if (throwable instanceof RpcException) {
+                output.writeString(((RpcException) throwable).getClassName());
+            }
+            output.writeString(throwable.getMessage());
+            kryo.writeObject(output, throwable.getStackTrace());
+            kryo.writeClassAndObject(output, encodable(kryo, throwable.getCause()));
+            Throwable[] suppressed = throwable.getSuppressed();
+            output.writeVarInt(suppressed.length, true);
+            for (Throwable s : suppressed) {
+                kryo.writeClassAndObject(output, encodable(kryo, s));
+            }
+        }
+
+        @Override
+        public Throwable read(Kryo kryo, Input input, Class<? extends Throwable> type) {
+            String className = type == RpcException.class ? input.readString() : null;
+            String message = input.readString();
+            Throwable throwable = className != null ? new RpcException(className, message) : newInstance(kryo, type, message);
+            kryo.reference(throwable);
+            throwable.setStackTrace(kryo.readObject(input, StackTraceElement[].class));
+            Throwable cause = (Throwable) kryo.readClassAndObject(input);
+            if (cause != null && throwable.getCause() == null) {
+                try {
+                    throwable.initCause(cause);
+                } catch (IllegalStateException | IllegalArgumentException e) {
+                    // the cause was set by the constructor or cannot be set on an instance created without one
+                }
+            }
+            int suppressed = input.readVarInt(true);
+            for (int i = 0; i < suppressed; i++) {
+                Throwable s = (Throwable) kryo.readClassAndObject(input);
+                if (s != null && s != throwable) {
+                    throwable.addSuppressed(s);
+                }
+            }
+            return throwable;
+        }
+
+        private static Throwable newInstance(Kryo kryo, Class<? extends Throwable> type, String message) {
+            Constructor<? extends Throwable> constructor;
+            try {
+                constructor = type.getConstructor(String.class);
+            } catch (NoSuchMethodException e) {
+                return kryo.newInstance(type);
+            }
+            try {
+                return constructor.newInstance(message);
+            } catch (ReflectiveOperationException e) {
+                throw new KryoException("cannot create " + type.getName(), e);
+            }
+        }
+    }
+
+    private static final class StackTraceElementSerializer extends com.esotericsoftware.kryo.Serializer<StackTraceElement> {
+
+        private StackTraceElementSerializer() {
+            setImmutable(true);
+        }
+
+        @Override
+        public void write(Kryo kryo, Output output, StackTraceElement element) {
+            output.writeString(element.getClassLoaderName());
+            output.writeString(element.getModuleName());
+            output.writeString(element.getModuleVersion());
+            output.writeString(element.getClassName());
+            output.writeString(element.getMethodName());
+            output.writeString(element.getFileName());
+            output.writeVarInt(element.getLineNumber(), false);
+        }
+
+        @Override
+        public StackTraceElement read(Kryo kryo, Input input, Class<? extends StackTraceElement> type) {
+            return new StackTraceElement(input.readString(), input.readString(), input.readString(),
+                    input.readString(), input.readString(), input.readString(), input.readVarInt(false));
+        }
+    }
+
+    private static final class Registration {
+
+        private final Class<?> type;
+        private final int id;
+
+        private Registration(Class<?> type, int id) {
+            this.type = type;
+            this.id = id;
+        }
+    }
+
+    /**
+     * the Kryo of a thread and how many of the application's registrations it has
+     */
+    private static final class RegisteredKryo {
+
+        private final Kryo kryo;
+        private int registered;
+
+        private RegisteredKryo(Kryo kryo) {
+            this.kryo = kryo;
+        }
+
+        private Kryo kryo() {
+            int size = REGISTRATIONS.size();
+            if (registered < size) {
+                for (Registration registration : REGISTRATIONS.subList(registered, size)) {
+                    kryo.register(registration.type, registration.id);
+                }
+                registered = size;
+            }
+            return kryo;
+        }
+    }
+}
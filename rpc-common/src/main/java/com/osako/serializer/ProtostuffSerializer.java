@@ -0,0 +1,27 @@
+package com.osako.serializer;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Protostuff, the default serializer (see CustomSerializer)
+ */
+public class ProtostuffSerializer implements Serializer {
+
+    public static final byte ID = 1;
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public void serialize(Object obj, OutputStream out) {
+        CustomSerializer.serialize(obj, out);
+    }
+
+    @Override
+    public <T> T deserialize(InputStream in, Class<T> cls) {
+        return CustomSerializer.deserialize(in, cls);
+    }
+}
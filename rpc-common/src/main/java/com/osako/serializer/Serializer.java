@@ -0,0 +1,31 @@
+package com.osako.serializer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Serialization SPI, the id of the serializer is written into every frame so the peer knows how to read the body
+ * Built-in: Protostuff (1, default), Kryo (2), Hessian (3), JDK (4)
+ * Other implementations are registered through META-INF/services/com.osako.serializer.Serializer
+ * and must be present on both the client and the server
+ * The server deserializes bodies from untrusted clients, it only accepts the serializers it is configured with
+ * (Protostuff by default); Kryo, Hessian and JDK only read the classes they are told to expect (see their docs)
+ */
+public interface Serializer {
+
+    /**
+     * id written into the frame, unique among all serializers
+     */
+    byte getId();
+
+    /**
+     * ser obj --> stream
+     */
+    void serialize(Object obj, OutputStream out) throws IOException;
+
+    /**
+     * deser stream --> obj
+     */
+    <T> T deserialize(InputStream in, Class<T> cls) throws IOException;
+}
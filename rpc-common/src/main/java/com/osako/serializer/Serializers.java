@@ -0,0 +1,69 @@
+package com.osako.serializer;
+
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Registry of the serializers by id, the built-in ones plus those found through ServiceLoader
+ */
+public final class Serializers {
+
+    private static final Serializer DEFAULT = new ProtostuffSerializer();
+
+    // indexed by id, a lookup per frame is an array read
+    private static final Serializer[] SERIALIZERS = new Serializer[128];
+
+    static {
+        register(DEFAULT);
+        register(new KryoSerializer());
+        register(new HessianSerializer());
+        register(new JdkSerializer());
+        for (Serializer serializer : ServiceLoader.load(Serializer.class)) {
+            register(serializer);
+        }
+    }
+
+    private Serializers() {
+    }
+
+    private static void register(Serializer serializer) {
+        byte id = serializer.getId();
+        if (id <= 0) {
+            throw new IllegalArgumentException(String.format("illegal serializer id %d of %s", id, serializer.getClass().getName()));
+        }
+        SERIALIZERS[id] = serializer;
+    }
+
+    public static Serializer getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @return ids of all registered serializers
+     */
+    public static Set<Byte> ids() {
+        Set<Byte> ids = new TreeSet<>();
+        for (Serializer serializer : SERIALIZERS) {
+            if (serializer != null) {
+                ids.add(serializer.getId());
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * @param id serializer id read from the frame, 0 means the default
+     * @return
+     */
+    public static Serializer get(byte id) {
+        if (id == 0) {
+            return DEFAULT;
+        }
+        Serializer serializer = id > 0 ? SERIALIZERS[id] : null;
+        if (serializer == null) {
+            throw new IllegalArgumentException(String.format("unknown serializer id: %d", id));
+        }
+        return serializer;
+    }
+}
@@ -0,0 +1,74 @@
+package com.osako.transport;
+
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollDomainSocketChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerDomainSocketChannel;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+/**
+ * The Netty transport of the client and the server: NIO, or the native epoll transport on Linux,
+ * which also supports SO_REUSEPORT and Unix domain sockets
+ * The channel classes follow the type of the event loop group, so a group decides the transport of its channels
+ */
+public final class Transports {
+
+    private Transports() {
+    }
+
+    /**
+     * @return true on Linux with the native library of netty-transport-native-epoll loaded
+     */
+    public static boolean isEpollAvailable() {
+        return Epoll.isAvailable();
+    }
+
+    /**
+     * @return why the native epoll transport cannot be used, null if it can
+     */
+    public static Throwable epollUnavailabilityCause() {
+        return Epoll.unavailabilityCause();
+    }
+
+    /**
+     * @param epoll native epoll transport, the caller checks isEpollAvailable()
+     * @param threads number of event loops, 0 means twice the number of cores
+     * @return
+     */
+    public static EventLoopGroup newEventLoopGroup(boolean epoll, int threads) {
+        return epoll ? new EpollEventLoopGroup(threads) : new NioEventLoopGroup(threads);
+    }
+
+    public static boolean isEpoll(EventLoopGroup group) {
+        return group instanceof EpollEventLoopGroup;
+    }
+
+    public static Class<? extends ServerChannel> serverChannelClass(EventLoopGroup group) {
+        return isEpoll(group) ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+    }
+
+    public static Class<? extends Channel> channelClass(EventLoopGroup group) {
+        return isEpoll(group) ? EpollSocketChannel.class : NioSocketChannel.class;
+    }
+
+    /**
+     * Unix domain sockets, only with an epoll event loop group
+     */
+    public static Class<? extends ServerChannel> serverDomainSocketChannelClass() {
+        return EpollServerDomainSocketChannel.class;
+    }
+
+    /**
+     * Unix domain sockets, only with an epoll event loop group
+     */
+    public static Class<? extends Channel> domainSocketChannelClass() {
+        return EpollDomainSocketChannel.class;
+    }
+}
@@ -0,0 +1,113 @@
+package com.osako.serializer;
+
+import com.osako.entity.RpcResponse;
+import com.osako.exception.RpcException;
+import com.osako.exception.RpcTimeoutException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Responses round-trip through every built-in serializer, with a result and with an exception
+ */
+class SerializerTest {
+
+    static Stream<Serializer> serializers() {
+        return Serializers.ids().stream().map(Serializers::get);
+    }
+
+    @ParameterizedTest
+    @MethodSource("serializers")
+    void responseWithResult(Serializer serializer) throws IOException {
+        RpcResponse response = new RpcResponse();
+        response.setResult(new ArrayList<>(List.of("a", "b")));
+
+        RpcResponse read = roundTrip(serializer, response);
+
+        assertFalse(read.hasException());
+        assertEquals(List.of("a", "b"), read.getResult());
+    }
+
+    @ParameterizedTest
+    @MethodSource("serializers")
+    void responseWithException(Serializer serializer) throws IOException {
+        IllegalStateException exception = new IllegalStateException("boom");
+        RpcResponse response = new RpcResponse();
+        response.setException(exception);
+
+        RpcResponse read = roundTrip(serializer, response);
+
+        assertTrue(read.hasException());
+        assertInstanceOf(IllegalStateException.class, read.getException());
+        assertEquals("boom", read.getException().getMessage());
+    }
+
+    @ParameterizedTest
+    @MethodSource("serializers")
+    void responseWithFrameworkException(Serializer serializer) throws IOException {
+        RpcResponse response = new RpcResponse();
+        response.setException(new RpcTimeoutException("deadline passed"));
+
+        RpcResponse read = roundTrip(serializer, response);
+
+        assertInstanceOf(RpcTimeoutException.class, read.getException());
+        assertEquals("deadline passed", read.getException().getMessage());
+    }
+
+    @Test
+    void kryoKeepsStackTraceAndCause() throws IOException {
+        IllegalStateException exception = new IllegalStateException("boom", new IOException("io"));
+        RpcResponse response = new RpcResponse();
+        response.setException(exception);
+
+        Throwable read = roundTrip(new KryoSerializer(), response).getException();
+
+        assertArrayEquals(exception.getStackTrace(), read.getStackTrace());
+        assertInstanceOf(IOException.class, read.getCause());
+        assertEquals("io", read.getCause().getMessage());
+    }
+
+    @Test
+    void kryoReplacesUnregisteredException() throws IOException {
+        DemoException exception = new DemoException("demo");
+        exception.addSuppressed(new IllegalArgumentException("suppressed"));
+        RpcResponse response = new RpcResponse();
+        response.setException(exception);
+
+        Throwable read = roundTrip(new KryoSerializer(), response).getException();
+
+        RpcException rpcException = assertInstanceOf(RpcException.class, read);
+        assertEquals(DemoException.class.getName(), rpcException.getClassName());
+        assertEquals("demo", rpcException.getMessage());
+        assertEquals(DemoException.class.getName() + ": demo", rpcException.toString());
+        assertArrayEquals(exception.getStackTrace(), rpcException.getStackTrace());
+        assertEquals(1, rpcException.getSuppressed().length);
+        assertInstanceOf(IllegalArgumentException.class, rpcException.getSuppressed()[0]);
+    }
+
+    private static RpcResponse roundTrip(Serializer serializer, RpcResponse response) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.serialize(response, out);
+        return serializer.deserialize(new ByteArrayInputStream(out.toByteArray()), RpcResponse.class);
+    }
+
+    static class DemoException extends RuntimeException {
+
+        DemoException(String message) {
+            super(message);
+        }
+    }
+}
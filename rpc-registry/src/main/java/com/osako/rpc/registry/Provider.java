@@ -0,0 +1,252 @@
+package com.osako.rpc.registry;
+
+import java.util.Collections;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * A provider of a service, parsed once from the content of its address node
+ * The content is host:port, optionally followed by the provider's metadata as query parameters, e.g.
+ * 10.0.0.1:8000?weight=100&zone=az1&version=1&serializers=1,2,3,4&compressors=1,2,3&start=1700000000000&load=3
+ * A provider that also listens on a Unix domain socket advertises it as unix=/path/of/the.sock
+ * Parameters left out take their defaults and unknown parameters are ignored, so a bare host:port is still a provider
+ */
+public final class Provider {
+
+    public static final int DEFAULT_WEIGHT = 100;
+
+    private final String address;
+    private final String host;
+    private final int port;
+    private final int weight;
+    // availability zone of the provider, "" if not set
+    private final String zone;
+    // protocol version of the provider, 0 if not advertised
+    private final int version;
+    // ids of the serializers / compressors the provider can read, empty if not advertised
+    private final Set<Byte> serializers;
+    private final Set<Byte> compressors;
+    // start time of the provider (epoch ms), 0 if not advertised
+    private final long startTime;
+    // requests in flight on the provider when the node was last refreshed
+    private final int load;
+    // path of the Unix domain socket the provider listens on, "" if none
+    private final String unixSocket;
+
+    public Provider(String host, int port, int weight) {
+        this(host, port, weight, "", 0, Collections.emptySet(), Collections.emptySet(), 0, 0, "");
+    }
+
+    public Provider(String host, int port, int weight, String zone, int version, Set<Byte> serializers,
+                    Set<Byte> compressors, long startTime, int load, String unixSocket) {
+        this.host = host;
+        this.port = port;
+        this.weight = weight;
+        this.zone = zone == null ? "" : zone;
+        this.version = version;
+        this.serializers = Set.copyOf(serializers);
+        this.compressors = Set.copyOf(compressors);
+        this.startTime = startTime;
+        this.load = load;
+        this.unixSocket = unixSocket == null ? "" : unixSocket;
+        this.address = host + ":" + port;
+    }
+
+    /**
+     * parse the content of an address node (host:port, optionally followed by ?metadata)
+     * @param data
+     * @return
+     */
+    public static Provider parse(String data) {
+        String content = data.trim();
+        int query = content.indexOf('?');
+        String address = query < 0 ? content : content.substring(0, query);
+        int index = address.lastIndexOf(':');
+        if (index <= 0) {
+            throw new IllegalArgumentException(String.format("illegal service address: %s", data));
+        }
+        String host = address.substring(0, index);
+        int port = Integer.parseInt(address.substring(index + 1));
+        if (query < 0) {
+            return new Provider(host, port, DEFAULT_WEIGHT);
+        }
+        int weight = DEFAULT_WEIGHT;
+        String zone = "";
+        int version = 0;
+        Set<Byte> serializers = Collections.emptySet();
+        Set<Byte> compressors = Collections.emptySet();
+        long startTime = 0;
+        int load = 0;
+        String unixSocket = "";
+        try {
+            for (String parameter : content.substring(query + 1).split("&")) {
+                int separator = parameter.indexOf('=');
+                if (separator <= 0) {
+                    continue;
+                }
+                String value = parameter.substring(separator + 1);
+                switch (parameter.substring(0, separator)) {
+                    case "weight":
+                        weight = Integer.parseInt(value);
+                        break;
+                    case "zone":
+                        zone = value;
+                        break;
+                    case "version":
+                        version = Integer.parseInt(value);
+                        break;
+                    case "serializers":
+                        serializers = parseIds(value);
+                        break;
+                    case "compressors":
+                        compressors = parseIds(value);
+                        break;
+                    case "start":
+                        startTime = Long.parseLong(value);
+                        break;
+                    case "load":
+                        load = Integer.parseInt(value);
+                        break;
+                    case "unix":
+                        unixSocket = value;
+                        break;
+                    default:
+                        // written by a newer provider
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("illegal provider metadata: %s", data), e);
+        }
+        return new Provider(host, port, weight, zone, version, serializers, compressors, startTime, load, unixSocket);
+    }
+
+    /**
+     * the content of the provider's address node, parse() reads it back
+     * @return
+     */
+    public String toData() {
+        StringBuilder data = new StringBuilder(address).append("?weight=").append(weight);
+        if (!zone.isEmpty()) {
+            data.append("&zone=").append(zone);
+        }
+        if (version != 0) {
+            data.append("&version=").append(version);
+        }
+        if (!serializers.isEmpty()) {
+            data.append("&serializers=").append(formatIds(serializers));
+        }
+        if (!compressors.isEmpty()) {
+            data.append("&compressors=").append(formatIds(compressors));
+        }
+        if (startTime != 0) {
+            data.append("&start=").append(startTime);
+        }
+        if (!unixSocket.isEmpty()) {
+            data.append("&unix=").append(unixSocket);
+        }
+        return data.append("&load=").append(load).toString();
+    }
+
+    private static Set<Byte> parseIds(String value) {
+        Set<Byte> ids = new TreeSet<>();
+        for (String id : value.split(",")) {
+            if (!id.isEmpty()) {
+                ids.add(Byte.parseByte(id));
+            }
+        }
+        return ids;
+    }
+
+    private static String formatIds(Set<Byte> ids) {
+        return new TreeSet<>(ids).stream().map(String::valueOf).collect(Collectors.joining(","));
+    }
+
+    /**
+     * host:port, the key of the provider's connection and statistics
+     */
+    public String getAddress() {
+        return address;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public String getZone() {
+        return zone;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public Set<Byte> getSerializers() {
+        return serializers;
+    }
+
+    public Set<Byte> getCompressors() {
+        return compressors;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public int getLoad() {
+        return load;
+    }
+
+    public String getUnixSocket() {
+        return unixSocket;
+    }
+
+    /**
+     * @param id serializer id, 0 means the default
+     * @return true if the provider reads the serializer, or does not advertise its serializers
+     */
+    public boolean supportsSerializer(byte id) {
+        return id == 0 || serializers.isEmpty() || serializers.contains(id);
+    }
+
+    /**
+     * @param id compressor id, 0 means not compressed
+     * @return true if the provider reads the compressor, or does not advertise its compressors
+     */
+    public boolean supportsCompressor(byte id) {
+        return id == 0 || compressors.isEmpty() || compressors.contains(id);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Provider)) {
+            return false;
+        }
+        Provider that = (Provider) o;
+        return port == that.port && weight == that.weight && version == that.version && startTime == that.startTime
+                && load == that.load && host.equals(that.host) && zone.equals(that.zone) && unixSocket.equals(that.unixSocket)
+                && serializers.equals(that.serializers) && compressors.equals(that.compressors);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(host, port, weight, zone, version, serializers, compressors, startTime, load, unixSocket);
+    }
+
+    @Override
+    public String toString() {
+        return address;
+    }
+}
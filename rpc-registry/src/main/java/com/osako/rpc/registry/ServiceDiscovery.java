@@ -1,14 +1,30 @@
 package com.osako.rpc.registry;
 
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
 /**
  * Service discovery interface
  */
 public interface ServiceDiscovery {
 
     /**
-     * search for service address using serviceName
+     * search for all providers of the service using serviceName, the client's load balancer picks one of them
+     * @param serviceName
+     * @return immutable list of providers, empty if there is none
+     */
+    List<Provider> lookup(String serviceName);
+
+    /**
+     * search for service address using serviceName (a random provider)
      * @param serviceName
      * @return
      */
-    String discovery(String serviceName);
+    default String discovery(String serviceName) {
+        List<Provider> providers = lookup(serviceName);
+        if (providers.isEmpty()) {
+            throw new RuntimeException(String.format("can not find any address of service: %s", serviceName));
+        }
+        return providers.get(ThreadLocalRandom.current().nextInt(providers.size())).getAddress();
+    }
 }
@@ -1,5 +1,8 @@
 package com.osako.rpc.registry;
 
+import java.util.Collection;
+import java.util.function.Supplier;
+
 /**
  * Service registry interface
  */
@@ -11,4 +14,25 @@ public interface ServiceRegistry {
      * @param serviceAddress
      */
     void register(String serviceName, String serviceAddress);
+
+    /**
+     * register all services of a provider, the address nodes carry the provider's metadata (see Provider.toData())
+     * A registry that supports it refreshes the nodes periodically with the metadata currently supplied,
+     * so the clients see e.g. the provider's current load
+     * @param serviceNames
+     * @param metadata supplies the current metadata of the provider
+     */
+    default void register(Collection<String> serviceNames, Supplier<Provider> metadata) {
+        String data = metadata.get().toData();
+        for (String serviceName : serviceNames) {
+            register(serviceName, data);
+        }
+    }
+
+    /**
+     * remove the address nodes of the provider registered with register(serviceNames, metadata) and stop refreshing
+     * them, so clients stop routing to it; the provider can be registered again afterwards
+     */
+    default void unregister() {
+    }
 }
@@ -0,0 +1,43 @@
+package com.osako.rpc.registry.local;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process registry of the service objects exposed by the RpcServers of this JVM
+ * A proxy whose provider lives in the same JVM can call the service object directly,
+ * without discovery, connection and serialization
+ */
+public final class LocalRegistry {
+
+    // serviceName (interface name-version) -> service object
+    private static final Map<String, Object> SERVICES = new ConcurrentHashMap<>();
+
+    private LocalRegistry() {
+    }
+
+    /**
+     * @param serviceName the name the service is registered with in the service registry
+     * @param serviceBean
+     */
+    public static void register(String serviceName, Object serviceBean) {
+        SERVICES.put(serviceName, serviceBean);
+    }
+
+    /**
+     * remove the service if it is still registered with this object (another server may have exposed it since)
+     * @param serviceName
+     * @param serviceBean
+     */
+    public static void unregister(String serviceName, Object serviceBean) {
+        SERVICES.remove(serviceName, serviceBean);
+    }
+
+    /**
+     * @param serviceName
+     * @return the service object exposed in this JVM, null if there is none
+     */
+    public static Object lookup(String serviceName) {
+        return SERVICES.get(serviceName);
+    }
+}
@@ -1,67 +1,152 @@
 package com.osako.rpc.registry.zookeeper;
 
+import com.osako.rpc.registry.Provider;
 import com.osako.rpc.registry.ServiceDiscovery;
+import org.I0Itec.zkclient.IZkChildListener;
+import org.I0Itec.zkclient.IZkDataListener;
 import org.I0Itec.zkclient.ZkClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Use Zookeeper to discover service
+ * One long-lived Zookeeper session is shared by all lookups, the providers of every looked up service are kept
+ * in an immutable in-memory snapshot that child / data watches replace when providers change,
+ * so a lookup is a map read without any network round trip
  */
 public class ZookeeperServiceDiscovery implements ServiceDiscovery {
     private static final Logger LOGGER  = LoggerFactory.getLogger(ZookeeperServiceDiscovery.class);
 
-    private String zkAddress;
+    private final String zkAddress;
+
+    private volatile ZkClient zkClient;
+
+    // serviceName -> watcher holding the current snapshot of the service's providers
+    private final Map<String, ServiceWatcher> watchers = new ConcurrentHashMap<>();
 
     public ZookeeperServiceDiscovery(String zkAddress) {
         this.zkAddress = zkAddress;
     }
 
     /**
-     * discover service
+     * discover all providers of the service
      */
     @Override
-    public String discovery(String serviceName) {
-        ZkClient zkClient = new ZkClient(zkAddress, Constant.ZK_SESSION_TIMEOUT, Constant.ZK_CONNECTION_TIMEOUT);
-        LOGGER.info("connect Zookeeper");
+    public List<Provider> lookup(String serviceName) {
+        ServiceWatcher watcher = watchers.get(serviceName);
+        if (watcher == null) {
+            // first lookup of the service, read its nodes once and start watching them
+            watcher = watchers.computeIfAbsent(serviceName, name -> new ServiceWatcher(getZkClient(), name));
+        }
+        return watcher.providers;
+    }
 
+    /**
+     * close the Zookeeper session, the cached providers are no longer updated
+     */
+    public void close() {
+        ZkClient zkClient = this.zkClient;
+        if (zkClient != null) {
+            zkClient.close();
+        }
+    }
 
-        try {
-            // get service node
-            String servicePath = Constant.ZK_REGISTRY_PATH + "/" + serviceName;
-            // if the node does not exist, throw an exception
-            if (!zkClient.exists(servicePath)) {
-                throw new RuntimeException(String.format("can not find any service node on path : %s", servicePath));
+    private ZkClient getZkClient() {
+        ZkClient zkClient = this.zkClient;
+        if (zkClient == null) {
+            synchronized (this) {
+                zkClient = this.zkClient;
+                if (zkClient == null) {
+                    zkClient = new ZkClient(zkAddress, Constant.ZK_SESSION_TIMEOUT, Constant.ZK_CONNECTION_TIMEOUT);
+                    LOGGER.info("connect Zookeeper");
+                    this.zkClient = zkClient;
+                }
             }
+        }
+        return zkClient;
+    }
+
+    /**
+     * Watches the children of a service node and the data of every address node,
+     * publishes a new immutable provider list on every change
+     */
+    private static class ServiceWatcher implements IZkChildListener, IZkDataListener {
 
-            // get all child path of a node
-            List<String> addressList = zkClient.getChildren(servicePath);
-            if (addressList.isEmpty()) {
-                throw new RuntimeException(String.format("can not find any address node on path: %s", servicePath));
+        private final ZkClient zkClient;
+        private final String servicePath;
+
+        // address node name -> provider parsed from the content of the node
+        private final Map<String, Provider> nodes = new ConcurrentHashMap<>();
+
+        // snapshot read by lookup(), replaced as a whole on every change
+        private volatile List<Provider> providers = Collections.emptyList();
+
+        ServiceWatcher(ZkClient zkClient, String serviceName) {
+            this.zkClient = zkClient;
+            this.servicePath = Constant.ZK_REGISTRY_PATH + "/" + serviceName;
+            // subscribing also works before the service node exists, and returns its current children
+            List<String> children = zkClient.subscribeChildChanges(servicePath, this);
+            handleChildChange(servicePath, children);
+        }
+
+        @Override
+        public synchronized void handleChildChange(String parentPath, List<String> currentChildren) {
+            Set<String> children = currentChildren == null ? Collections.emptySet() : new HashSet<>(currentChildren);
+            // address nodes that are gone
+            for (String child : nodes.keySet()) {
+                if (!children.contains(child)) {
+                    zkClient.unsubscribeDataChanges(servicePath + "/" + child, this);
+                    nodes.remove(child);
+                }
+            }
+            // new address nodes
+            for (String child : children) {
+                if (!nodes.containsKey(child)) {
+                    String addressPath = servicePath + "/" + child;
+                    zkClient.subscribeDataChanges(addressPath, this);
+                    String data = zkClient.readData(addressPath, true);
+                    if (data != null) {
+                        nodes.put(child, Provider.parse(data));
+                    }
+                }
             }
+            publish(true);
+        }
 
-            // get address node(one service node can have multiple service address (same service but have multiple dispathches))
-            String address;
-            int size = addressList.size();
-            // if only one address, get that address
-            if (size == 1) {
-                address = addressList.get(0);
-                LOGGER.info("get only address node: {}", address);
+        @Override
+        public synchronized void handleDataChange(String dataPath, Object data) {
+            // metadata refreshed by the provider, e.g. its load
+            nodes.put(childName(dataPath), Provider.parse((String) data));
+            publish(false);
+        }
+
+        @Override
+        public synchronized void handleDataDeleted(String dataPath) {
+            nodes.remove(childName(dataPath));
+            publish(true);
+        }
+
+        /**
+         * @param membershipChanged false if only the metadata of a provider changed, which happens periodically
+         */
+        private void publish(boolean membershipChanged) {
+            providers = List.copyOf(nodes.values());
+            if (membershipChanged) {
+                LOGGER.info("service {} providers: {}", servicePath, providers);
             } else {
-                // Nice to use in high concurrency environment
-                address = addressList.get(ThreadLocalRandom.current().nextInt(size));
-                LOGGER.info("get random address node: {}", address);
+                LOGGER.debug("service {} providers: {}", servicePath, providers);
             }
+        }
 
-            String addressPath = servicePath + "/" + address;
-            // read content of the node
-            System.out.println("data is !!!!!!!!! " + zkClient.readData(addressPath));
-            return zkClient.readData(addressPath);
-        } finally {
-            zkClient.close();
+        private static String childName(String path) {
+            return path.substring(path.lastIndexOf('/') + 1);
         }
     }
 }
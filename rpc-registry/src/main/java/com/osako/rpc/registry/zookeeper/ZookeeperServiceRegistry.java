@@ -1,25 +1,80 @@
 package com.osako.rpc.registry.zookeeper;
 
+import com.osako.rpc.registry.Provider;
 import com.osako.rpc.registry.ServiceRegistry;
+import org.I0Itec.zkclient.IZkStateListener;
 import org.I0Itec.zkclient.ZkClient;
+import org.I0Itec.zkclient.exception.ZkNoNodeException;
+import org.I0Itec.zkclient.exception.ZkNodeExistsException;
+import org.I0Itec.zkclient.serialize.SerializableSerializer;
+import org.I0Itec.zkclient.serialize.ZkSerializer;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.Op;
+import org.apache.zookeeper.OpResult;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooDefs;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
 /**
  * Use com.osako.rpc.registry.zookeeper to implement service registry
+ * The services of a provider are registered together in one multi-op: the missing service nodes and the
+ * ephemeral address nodes of all services are created in a single transaction, the address nodes carry the
+ * provider's metadata and are refreshed periodically (again in one multi-op, only when the metadata changed),
+ * and created again when the Zookeeper session expired; unregister() deletes them when the provider stops
  */
 public class ZookeeperServiceRegistry implements ServiceRegistry {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ZookeeperServiceRegistry.class);
 
+    // a service node created concurrently by another provider fails the multi-op, which is then retried
+    private static final int MAX_REGISTER_ATTEMPTS = 3;
+
+    public static final int DEFAULT_REFRESH_SECONDS = 5;
+
+    // the same serializer ZkClient uses, data written through multi-ops is read back with readData()
+    private final ZkSerializer serializer = new SerializableSerializer();
+
     private final ZkClient zkClient;
 
+    // interval of refreshing the metadata of the registered provider
+    private int refreshSeconds = DEFAULT_REFRESH_SECONDS;
+
+    // the services registered with metadata, and their address nodes
+    private Collection<String> serviceNames = Collections.emptyList();
+    private Supplier<Provider> metadata;
+    private List<String> addressNodes = Collections.emptyList();
+    // content of the address nodes written last
+    private String data;
+
+    private ScheduledExecutorService refresher;
+    private IZkStateListener sessionListener;
+
     public ZookeeperServiceRegistry(String zkAddress) {
         // create com.osako.rpc.registry.zookeeper client
-        zkClient = new ZkClient(zkAddress, Constant.ZK_SESSION_TIMEOUT, Constant.ZK_CONNECTION_TIMEOUT);
+        zkClient = new ZkClient(zkAddress, Constant.ZK_SESSION_TIMEOUT, Constant.ZK_CONNECTION_TIMEOUT, serializer);
         LOGGER.info("connect com.osako.rpc.registry.zookeeper");
     }
 
+    /**
+     * applies to providers registered afterwards, 0 or less disables refreshing
+     * @param refreshSeconds
+     */
+    public void setRefreshSeconds(int refreshSeconds) {
+        this.refreshSeconds = refreshSeconds;
+    }
+
     /**
      * register service
      * @param serviceName - method name
@@ -45,4 +100,171 @@ public class ZookeeperServiceRegistry implements ServiceRegistry {
         String addressNode = zkClient.createEphemeralSequential(addressPath, serviceAddress);
         LOGGER.debug("create address node: {}", addressNode);
     }
+
+    /**
+     * register all services in one multi-op, then keep their address nodes up to date
+     * @param serviceNames
+     * @param metadata supplies the current metadata of the provider
+     */
+    @Override
+    public synchronized void register(Collection<String> serviceNames, Supplier<Provider> metadata) {
+        if (this.metadata != null) {
+            throw new IllegalStateException("a provider is already registered");
+        }
+        this.serviceNames = List.copyOf(serviceNames);
+        this.metadata = metadata;
+        createAddressNodes();
+        // ephemeral nodes are gone with an expired session, create them again in the new one
+        sessionListener = new IZkStateListener() {
+            @Override
+            public void handleStateChanged(Watcher.Event.KeeperState state) {
+            }
+
+            @Override
+            public void handleNewSession() {
+                LOGGER.info("Zookeeper session expired, register services again");
+                synchronized (ZookeeperServiceRegistry.this) {
+                    if (metadata == null) {
+                        // unregistered in the meantime
+                        return;
+                    }
+                    try {
+                        createAddressNodes();
+                    } catch (RuntimeException e) {
+                        LOGGER.error("cannot register services again", e);
+                    }
+                }
+            }
+
+            @Override
+            public void handleSessionEstablishmentError(Throwable error) {
+                LOGGER.warn("cannot establish Zookeeper session", error);
+            }
+        };
+        zkClient.subscribeStateChanges(sessionListener);
+        if (refreshSeconds > 0) {
+            refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "rpc-registry-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+            refresher.scheduleWithFixedDelay(this::refresh, refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * stop refreshing and delete the address nodes in one multi-op
+     */
+    @Override
+    public synchronized void unregister() {
+        if (metadata == null) {
+            return;
+        }
+        if (refresher != null) {
+            refresher.shutdownNow();
+            refresher = null;
+        }
+        zkClient.unsubscribeStateChanges(sessionListener);
+        sessionListener = null;
+        List<Op> ops = new ArrayList<>(addressNodes.size());
+        for (String addressNode : addressNodes) {
+            ops.add(Op.delete(addressNode, -1));
+        }
+        try {
+            zkClient.multi(ops);
+        } catch (ZkNoNodeException e) {
+            // some nodes are already gone (e.g. with an expired session), delete the others one by one
+            for (String addressNode : addressNodes) {
+                zkClient.delete(addressNode);
+            }
+        } catch (RuntimeException e) {
+            // they are removed with the session at the latest
+            LOGGER.warn("cannot delete address nodes: {}", e.toString());
+        }
+        LOGGER.info("unregister {} services", serviceNames.size());
+        serviceNames = Collections.emptyList();
+        metadata = null;
+        addressNodes = Collections.emptyList();
+        data = null;
+    }
+
+    /**
+     * unregister and close the Zookeeper session
+     */
+    public synchronized void close() {
+        unregister();
+        zkClient.close();
+    }
+
+    /**
+     * one round trip to find the existing service nodes, one multi-op creating the missing ones and all address nodes
+     */
+    private void createAddressNodes() {
+        String data = metadata.get().toData();
+        byte[] bytes = serializer.serialize(data);
+        String registryPath = Constant.ZK_REGISTRY_PATH;
+        for (int attempt = 1; ; attempt++) {
+            List<Op> ops = new ArrayList<>();
+            Set<String> existing;
+            if (zkClient.exists(registryPath)) {
+                existing = new HashSet<>(zkClient.getChildren(registryPath));
+            } else {
+                ops.add(Op.create(registryPath, null, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT));
+                existing = Collections.emptySet();
+            }
+            for (String serviceName : serviceNames) {
+                if (!existing.contains(serviceName)) {
+                    ops.add(Op.create(registryPath + "/" + serviceName, null, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT));
+                }
+            }
+            int firstAddressOp = ops.size();
+            for (String serviceName : serviceNames) {
+                ops.add(Op.create(registryPath + "/" + serviceName + "/address-", bytes,
+                        ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL_SEQUENTIAL));
+            }
+            try {
+                List<OpResult> results = zkClient.multi(ops);
+                List<String> nodes = new ArrayList<>(serviceNames.size());
+                for (OpResult result : results.subList(firstAddressOp, results.size())) {
+                    nodes.add(((OpResult.CreateResult) result).getPath());
+                }
+                this.addressNodes = nodes;
+                this.data = data;
+                LOGGER.info("register {} services with {} service nodes created: {}",
+                        serviceNames.size(), firstAddressOp, data);
+                return;
+            } catch (ZkNodeExistsException e) {
+                // another provider created one of the nodes in the meantime
+                if (attempt >= MAX_REGISTER_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * write the current metadata into all address nodes in one multi-op, if it changed
+     */
+    private synchronized void refresh() {
+        if (metadata == null) {
+            return;
+        }
+        try {
+            String data = metadata.get().toData();
+            if (data.equals(this.data)) {
+                return;
+            }
+            byte[] bytes = serializer.serialize(data);
+            List<Op> ops = new ArrayList<>(addressNodes.size());
+            for (String addressNode : addressNodes) {
+                ops.add(Op.setData(addressNode, bytes, -1));
+            }
+            zkClient.multi(ops);
+            this.data = data;
+            LOGGER.debug("refresh {} address nodes: {}", ops.size(), data);
+        } catch (RuntimeException e) {
+            // e.g. the session expired, the nodes are created again in the new session
+            LOGGER.warn("cannot refresh address nodes: {}", e.toString());
+        }
+    }
 }
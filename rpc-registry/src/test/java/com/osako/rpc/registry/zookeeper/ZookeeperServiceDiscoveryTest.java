@@ -0,0 +1,115 @@
+package com.osako.rpc.registry.zookeeper;
+
+import com.osako.rpc.registry.Provider;
+import org.I0Itec.zkclient.ZkClient;
+import org.apache.curator.test.TestingServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * The snapshot served by lookup() against an in-process Zookeeper, the address nodes are written directly
+ * with a second session the way providers write them
+ */
+class ZookeeperServiceDiscoveryTest {
+
+    private static final String SERVICE = "com.osako.DemoService";
+    private static final String SERVICE_PATH = Constant.ZK_REGISTRY_PATH + "/" + SERVICE;
+
+    private TestingServer server;
+    private ZkClient provider;
+    private ZookeeperServiceDiscovery discovery;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new TestingServer();
+        provider = new ZkClient(server.getConnectString(), Constant.ZK_SESSION_TIMEOUT, Constant.ZK_CONNECTION_TIMEOUT);
+        discovery = new ZookeeperServiceDiscovery(server.getConnectString());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        discovery.close();
+        provider.close();
+        server.close();
+    }
+
+    @Test
+    void lookupOfUnknownServiceIsEmpty() {
+        assertTrue(discovery.lookup(SERVICE).isEmpty());
+    }
+
+    @Test
+    void lookupReadsExistingProviders() {
+        provider.createPersistent(SERVICE_PATH, true);
+        provider.createEphemeralSequential(SERVICE_PATH + "/address-", "127.0.0.1:8000");
+        provider.createEphemeralSequential(SERVICE_PATH + "/address-", "127.0.0.1:8001?weight=50&zone=az1");
+
+        List<Provider> providers = discovery.lookup(SERVICE);
+
+        assertEquals(Set.of(Provider.parse("127.0.0.1:8000"), Provider.parse("127.0.0.1:8001?weight=50&zone=az1")),
+                Set.copyOf(providers));
+    }
+
+    @Test
+    void snapshotFollowsAddedChangedAndRemovedProviders() {
+        assertTrue(discovery.lookup(SERVICE).isEmpty());
+
+        // added, also before the service node existed
+        provider.createPersistent(SERVICE_PATH, true);
+        String first = provider.createEphemeralSequential(SERVICE_PATH + "/address-", "127.0.0.1:8000?load=0");
+        awaitProviders(Set.of("127.0.0.1:8000?load=0"));
+        String second = provider.createEphemeralSequential(SERVICE_PATH + "/address-", "127.0.0.1:8001?load=0");
+        awaitProviders(Set.of("127.0.0.1:8000?load=0", "127.0.0.1:8001?load=0"));
+
+        // metadata refreshed
+        provider.writeData(first, "127.0.0.1:8000?load=7");
+        awaitProviders(Set.of("127.0.0.1:8000?load=7", "127.0.0.1:8001?load=0"));
+
+        // removed
+        provider.delete(second);
+        awaitProviders(Set.of("127.0.0.1:8000?load=7"));
+        provider.delete(first);
+        awaitProviders(Set.of());
+    }
+
+    @Test
+    void unchangedSnapshotIsNotCopied() {
+        provider.createPersistent(SERVICE_PATH, true);
+        provider.createEphemeralSequential(SERVICE_PATH + "/address-", "127.0.0.1:8000");
+
+        assertSame(discovery.lookup(SERVICE), discovery.lookup(SERVICE));
+    }
+
+    private void awaitProviders(Set<String> data) {
+        Set<Provider> expected = data.stream().map(Provider::parse).collect(Collectors.toSet());
+        await(() -> Set.copyOf(discovery.lookup(SERVICE)).equals(expected),
+                () -> "providers " + discovery.lookup(SERVICE) + ", expected " + expected);
+    }
+
+    static void await(BooleanSupplier condition, Supplier<String> message) {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail(message.get());
+            }
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail("interrupted");
+            }
+        }
+    }
+}
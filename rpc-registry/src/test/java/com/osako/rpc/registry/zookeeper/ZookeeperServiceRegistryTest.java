@@ -0,0 +1,135 @@
+package com.osako.rpc.registry.zookeeper;
+
+import com.osako.rpc.registry.Provider;
+import org.I0Itec.zkclient.ZkClient;
+import org.apache.curator.test.TestingServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static com.osako.rpc.registry.zookeeper.ZookeeperServiceDiscoveryTest.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Registration through multi-ops against an in-process Zookeeper, the nodes are read back with a second session
+ */
+class ZookeeperServiceRegistryTest {
+
+    private static final List<String> SERVICES = List.of("com.osako.DemoService", "com.osako.OtherService");
+
+    private static final Provider PROVIDER = new Provider("10.0.0.1", 8000, 50, "az1", 1,
+            Set.of((byte) 1, (byte) 2), Set.of((byte) 1), 1700000000000L, 3, "/tmp/rpc.sock");
+
+    private TestingServer server;
+    private ZkClient reader;
+    private ZookeeperServiceRegistry registry;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new TestingServer();
+        reader = new ZkClient(server.getConnectString(), Constant.ZK_SESSION_TIMEOUT, Constant.ZK_CONNECTION_TIMEOUT);
+        registry = new ZookeeperServiceRegistry(server.getConnectString());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        registry.close();
+        reader.close();
+        server.close();
+    }
+
+    @Test
+    void metadataRoundTripsThroughAddressNodes() {
+        registry.setRefreshSeconds(0);
+        registry.register(SERVICES, () -> PROVIDER);
+
+        for (String service : SERVICES) {
+            List<String> data = addressData(service);
+            assertEquals(1, data.size());
+            assertEquals(PROVIDER.toData(), data.get(0));
+            Provider parsed = Provider.parse(data.get(0));
+            assertEquals(PROVIDER, parsed);
+            assertEquals(PROVIDER.toData(), parsed.toData());
+        }
+    }
+
+    @Test
+    void registeringTwiceIsRejected() {
+        registry.setRefreshSeconds(0);
+        registry.register(SERVICES, () -> PROVIDER);
+
+        assertThrows(IllegalStateException.class, () -> registry.register(SERVICES, () -> PROVIDER));
+    }
+
+    @Test
+    void unregisterDeletesAddressNodes() {
+        registry.setRefreshSeconds(0);
+        registry.register(SERVICES, () -> PROVIDER);
+
+        registry.unregister();
+
+        for (String service : SERVICES) {
+            assertTrue(addressData(service).isEmpty());
+        }
+        // and can register again
+        registry.register(SERVICES, () -> PROVIDER);
+        assertEquals(List.of(PROVIDER.toData()), addressData(SERVICES.get(0)));
+    }
+
+    @Test
+    void changedMetadataIsRefreshed() {
+        AtomicInteger load = new AtomicInteger();
+        registry.setRefreshSeconds(1);
+        registry.register(SERVICES, () -> withLoad(load.get()));
+
+        load.set(42);
+
+        String expected = withLoad(42).toData();
+        await(() -> addressData(SERVICES.get(0)).equals(List.of(expected)),
+                () -> "address nodes " + addressData(SERVICES.get(0)) + ", expected " + expected);
+    }
+
+    @Test
+    void addressNodesAreCreatedAgainInANewSession() throws Exception {
+        registry.setRefreshSeconds(0);
+        registry.register(SERVICES, () -> PROVIDER);
+        assertEquals(List.of(PROVIDER.toData()), addressData(SERVICES.get(0)));
+
+        // an empty server on the same port does not know the session of the registry, which gets a new one
+        int port = server.getPort();
+        server.close();
+        server = new TestingServer(port);
+
+        for (String service : SERVICES) {
+            await(() -> addressData(service).equals(List.of(PROVIDER.toData())),
+                    () -> "address nodes of " + service + " " + addressData(service));
+        }
+    }
+
+    private static Provider withLoad(int load) {
+        return new Provider(PROVIDER.getHost(), PROVIDER.getPort(), PROVIDER.getWeight(), PROVIDER.getZone(),
+                PROVIDER.getVersion(), PROVIDER.getSerializers(), PROVIDER.getCompressors(), PROVIDER.getStartTime(),
+                load, PROVIDER.getUnixSocket());
+    }
+
+    private List<String> addressData(String service) {
+        String servicePath = servicePath(service);
+        if (!reader.exists(servicePath)) {
+            return List.of();
+        }
+        return reader.getChildren(servicePath).stream()
+                .map(child -> reader.<String>readData(servicePath + "/" + child, true))
+                .collect(Collectors.toList());
+    }
+
+    private static String servicePath(String service) {
+        return Constant.ZK_REGISTRY_PATH + "/" + service;
+    }
+}
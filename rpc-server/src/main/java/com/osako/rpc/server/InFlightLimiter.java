@@ -0,0 +1,44 @@
+package com.osako.rpc.server;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 服务的在途请求数限制（@RpcService 声明了 maxInFlight 的服务），同一服务的所有方法共享
+ * 超过限制的请求不再排队，直接回复过载，客户端可以换一个服务提供者重试
+ */
+public final class InFlightLimiter {
+
+    private final int limit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public InFlightLimiter(int limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * @return true 表示可以处理该请求，处理完成后必须调用 release()
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+}
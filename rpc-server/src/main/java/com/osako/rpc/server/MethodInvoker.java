@@ -0,0 +1,246 @@
+package com.osako.rpc.server;
+
+import com.osako.entity.MethodSignature;
+import com.osako.metrics.MethodMetrics;
+import com.osako.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.Executor;
+
+/**
+ * 预先绑定好的服务方法调用器，在 RpcServer 扫描服务时创建
+ * 参数不超过 4 个的公开方法用 LambdaMetafactory 为每个方法生成一个直接调用它的类（参数的拆箱、结果的装箱都在其中），
+ * 调用时是普通的接口调用，可以被 JIT 内联；其它方法使用已经绑定服务对象的 MethodHandle 调用
+ * 请求处理时不再需要 getMethod / setAccessible / Method.invoke
+ */
+public final class MethodInvoker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MethodInvoker.class);
+
+    // MethodHandle 的统一调用签名 (Object[])Object
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object[].class);
+
+    // 生成的调用类实现的接口，按参数个数与有无返回值区分，第一个参数是服务对象
+    public interface Call0 { Object call(Object target) throws Throwable; }
+    public interface Call1 { Object call(Object target, Object a) throws Throwable; }
+    public interface Call2 { Object call(Object target, Object a, Object b) throws Throwable; }
+    public interface Call3 { Object call(Object target, Object a, Object b, Object c) throws Throwable; }
+    public interface Call4 { Object call(Object target, Object a, Object b, Object c, Object d) throws Throwable; }
+    public interface VoidCall0 { void call(Object target) throws Throwable; }
+    public interface VoidCall1 { void call(Object target, Object a) throws Throwable; }
+    public interface VoidCall2 { void call(Object target, Object a, Object b) throws Throwable; }
+    public interface VoidCall3 { void call(Object target, Object a, Object b, Object c) throws Throwable; }
+    public interface VoidCall4 { void call(Object target, Object a, Object b, Object c, Object d) throws Throwable; }
+
+    private static final Class<?>[] CALLS = {Call0.class, Call1.class, Call2.class, Call3.class, Call4.class};
+    private static final Class<?>[] VOID_CALLS = {VoidCall0.class, VoidCall1.class, VoidCall2.class, VoidCall3.class, VoidCall4.class};
+
+    private final String serviceName;
+    // 方法签名，见 MethodSignature
+    private final String signature;
+    private final Object serviceBean;
+    private final Method method;
+    // 生成的调用类的实例（CallN / VoidCallN），无法生成时为 null，使用 handle
+    private final Object call;
+    private final int arity;
+    private final MethodHandle handle;
+    // 该服务独立的业务线程池，RpcServer 每次启动时设置
+    private volatile Executor executor;
+    private final byte compressor;
+    // 该方法的调用统计
+    private final MethodMetrics metrics;
+    // 该服务的在途请求数限制，null 表示不限制
+    private final InFlightLimiter limiter;
+    // 缓存编码好的响应时使用的缓存（所有方法共享），null 表示不缓存，以及该方法的响应的有效时间
+    private final ResponseCache responseCache;
+    private final long cacheTtlMillis;
+
+    /**
+     * @param serviceName 服务名称-版本号
+     * @param serviceBean 服务对象
+     * @param method 服务接口中的方法
+     * @param executor 该服务独立的业务线程池，null 表示使用共享的业务线程池
+     * @param compressor 该服务响应的压缩方式编号，0 表示使用客户端请求指定的方式
+     * @param limiter 该服务的在途请求数限制，null 表示不限制
+     * @param responseCache 缓存该方法响应的缓存，null 表示不缓存
+     * @param cacheTtlMillis 该方法的响应在缓存中的有效时间
+     * @throws IllegalAccessException
+     */
+    public MethodInvoker(String serviceName, Object serviceBean, Method method, Executor executor, byte compressor,
+                         InFlightLimiter limiter, ResponseCache responseCache, long cacheTtlMillis)
+            throws IllegalAccessException {
+        this.serviceName = serviceName;
+        this.signature = MethodSignature.of(serviceName, null, method.getName(), method.getParameterTypes());
+        this.serviceBean = serviceBean;
+        this.method = method;
+        this.executor = executor;
+        this.compressor = compressor;
+        this.limiter = limiter;
+        this.responseCache = responseCache;
+        this.cacheTtlMillis = cacheTtlMillis;
+        this.metrics = MetricsRegistry.server().method(signature);
+        this.arity = method.getParameterCount();
+        this.call = spinCall(method);
+        if (call == null) {
+            method.setAccessible(true);
+            this.handle = MethodHandles.lookup().unreflect(method)
+                    .bindTo(serviceBean)
+                    .asSpreader(Object[].class, arity)
+                    .asType(INVOKER_TYPE);
+        } else {
+            this.handle = null;
+        }
+    }
+
+    /**
+     * 用 LambdaMetafactory 生成直接调用该方法的类，在服务接口中定义（与接口同一个类加载器，可以访问接口）
+     * @return CallN / VoidCallN 的实例，方法参数过多、不是公开方法或者无法生成时返回 null
+     */
+    private static Object spinCall(Method method) {
+        int arity = method.getParameterCount();
+        Class<?> declaringClass = method.getDeclaringClass();
+        if (arity >= CALLS.length || !Modifier.isPublic(method.getModifiers())
+                || !Modifier.isPublic(declaringClass.getModifiers())) {
+            return null;
+        }
+        boolean isVoid = method.getReturnType() == void.class;
+        Class<?> callType = isVoid ? VOID_CALLS[arity] : CALLS[arity];
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(declaringClass, MethodHandles.lookup());
+            MethodHandle target = lookup.unreflect(method);
+            // 接口方法的类型 (Object...)Object 或 (Object...)void，实例化为 (服务接口, 参数的包装类型...)结果的包装类型
+            MethodType callMethodType = MethodType.genericMethodType(arity + 1);
+            MethodType instantiatedType = target.type().wrap();
+            if (isVoid) {
+                callMethodType = callMethodType.changeReturnType(void.class);
+                instantiatedType = instantiatedType.changeReturnType(void.class);
+            }
+            return LambdaMetafactory.metafactory(lookup, "call", MethodType.methodType(callType),
+                    callMethodType, target, instantiatedType).getTarget().invoke();
+        } catch (Throwable t) {
+            // 例如服务接口所在的模块没有开放给本模块，使用 MethodHandle
+            LOGGER.debug("cannot generate invoker of {}, use MethodHandle: {}", method, t.toString());
+            return null;
+        }
+    }
+
+    /**
+     * 调用服务方法，服务方法抛出的异常和错误原样抛出（不再包装成 InvocationTargetException）
+     * @param parameters
+     * @return 调用结果，void 方法为 null
+     * @throws Exception
+     */
+    public Object invoke(Object[] parameters) throws Exception {
+        try {
+            if (call == null) {
+                return (Object) handle.invokeExact(parameters);
+            }
+            return invokeCall(parameters);
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            // 既不是 Exception 也不是 Error 的 Throwable 子类
+            throw new RuntimeException(t);
+        }
+    }
+
+    private Object invokeCall(Object[] p) throws Throwable {
+        Object target = serviceBean;
+        switch (arity) {
+            case 0:
+                if (call instanceof Call0) {
+                    return ((Call0) call).call(target);
+                }
+                ((VoidCall0) call).call(target);
+                return null;
+            case 1:
+                if (call instanceof Call1) {
+                    return ((Call1) call).call(target, p[0]);
+                }
+                ((VoidCall1) call).call(target, p[0]);
+                return null;
+            case 2:
+                if (call instanceof Call2) {
+                    return ((Call2) call).call(target, p[0], p[1]);
+                }
+                ((VoidCall2) call).call(target, p[0], p[1]);
+                return null;
+            case 3:
+                if (call instanceof Call3) {
+                    return ((Call3) call).call(target, p[0], p[1], p[2]);
+                }
+                ((VoidCall3) call).call(target, p[0], p[1], p[2]);
+                return null;
+            default:
+                if (call instanceof Call4) {
+                    return ((Call4) call).call(target, p[0], p[1], p[2], p[3]);
+                }
+                ((VoidCall4) call).call(target, p[0], p[1], p[2], p[3]);
+                return null;
+        }
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    public String getSignature() {
+        return signature;
+    }
+
+    public Object getServiceBean() {
+        return serviceBean;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @param executor 该服务独立的业务线程池，null 表示使用共享的业务线程池
+     */
+    void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    public byte getCompressor() {
+        return compressor;
+    }
+
+    public MethodMetrics getMetrics() {
+        return metrics;
+    }
+
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    public long getCacheTtlMillis() {
+        return cacheTtlMillis;
+    }
+
+    /**
+     * 占用一个服务的在途请求名额
+     * @return false 表示服务已达到在途请求数限制
+     */
+    public boolean tryAcquire() {
+        return limiter == null || limiter.tryAcquire();
+    }
+
+    public void release() {
+        if (limiter != null) {
+            limiter.release();
+        }
+    }
+}
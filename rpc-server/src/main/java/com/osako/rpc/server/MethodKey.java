@@ -0,0 +1,78 @@
+package com.osako.rpc.server;
+
+import com.osako.entity.MethodSignature;
+import com.osako.entity.RpcRequest;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * 服务方法的唯一标识（接口名称 + 版本号 + 方法名 + 参数类型），是调用表的 key
+ * 直接比较请求中的字段，每次请求不需要再拼接 "接口名称-版本号" 字符串
+ */
+public final class MethodKey {
+
+    private final String interfaceName;
+    private final String serviceVersion;
+    private final String methodName;
+    private final Class<?>[] parameterTypes;
+    private final int hashCode;
+
+    public MethodKey(String interfaceName, String serviceVersion, String methodName, Class<?>[] parameterTypes) {
+        this.interfaceName = interfaceName;
+        // 版本号为空与 "" 等价，trim() 在没有空白字符时不会创建新字符串
+        this.serviceVersion = serviceVersion == null ? "" : serviceVersion.trim();
+        this.methodName = methodName;
+        this.parameterTypes = parameterTypes == null ? new Class<?>[0] : parameterTypes;
+        int hash = Objects.hash(this.interfaceName, this.serviceVersion, this.methodName);
+        this.hashCode = 31 * hash + Arrays.hashCode(this.parameterTypes);
+    }
+
+    public static MethodKey of(RpcRequest request) {
+        return new MethodKey(request.getInterfaceName(), request.getServiceVersion(),
+                request.getMethodName(), request.getParameterTypes());
+    }
+
+    public String getInterfaceName() {
+        return interfaceName;
+    }
+
+    public String getServiceVersion() {
+        return serviceVersion;
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    public Class<?>[] getParameterTypes() {
+        return parameterTypes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof MethodKey)) {
+            return false;
+        }
+        MethodKey that = (MethodKey) o;
+        return hashCode == that.hashCode
+                && Objects.equals(methodName, that.methodName)
+                && Objects.equals(interfaceName, that.interfaceName)
+                && serviceVersion.equals(that.serviceVersion)
+                && Arrays.equals(parameterTypes, that.parameterTypes);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        // 与客户端查找握手字典时使用的方法签名一致
+        return MethodSignature.of(interfaceName, serviceVersion, methodName, parameterTypes);
+    }
+}
@@ -0,0 +1,189 @@
+package com.osako.rpc.server;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.osako.entity.RpcRequest;
+import com.osako.serializer.Serializers;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.util.IllegalReferenceCountException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 服务方法的响应缓存（@RpcService 的 cacheMethods 中声明的方法），一个 RpcServer 的所有方法共享一个
+ * 缓存的是已经编码好的整个响应帧，放在堆外内存中，键是方法签名、序列化方式、压缩方式与序列化后的参数字节
+ * 命中时只复制缓存的帧并改写其中的请求编号，不再调用服务方法，也不再序列化响应
+ * 按所有帧的总字节数限制大小，写入后超过所属方法 TTL 的帧过期，淘汰的帧立即释放堆外内存
+ */
+public final class ResponseCache implements ResponseCacheMBean {
+
+    // 帧头中请求编号的位置：magic(2) version(1) type(1) serializer(1) compress(1)
+    private static final int REQUEST_ID_OFFSET = 6;
+
+    private final Cache<Key, ByteBuf> cache;
+
+    /**
+     * @param maxBytes 缓存的帧的总字节数上限
+     */
+    public ResponseCache(long maxBytes) {
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Key key, ByteBuf frame) -> frame.readableBytes())
+                // 每个方法的帧按该方法的 TTL 过期，读取不延长有效时间
+                .expireAfter(new Expiry<Key, ByteBuf>() {
+                    @Override
+                    public long expireAfterCreate(Key key, ByteBuf frame, long currentTime) {
+                        return key.ttlNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(Key key, ByteBuf frame, long currentTime, long currentDuration) {
+                        return key.ttlNanos;
+                    }
+
+                    @Override
+                    public long expireAfterRead(Key key, ByteBuf frame, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                // 在淘汰帧的线程中直接释放，不交给公共线程池，占用的堆外内存不会超过上限太多
+                .executor(Runnable::run)
+                .removalListener((Key key, ByteBuf frame, RemovalCause cause) -> {
+                    if (frame != null) {
+                        frame.release();
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * 计算请求的缓存键：方法签名加上按请求的序列化方式序列化的参数字节
+     * @param signature 方法签名，见 MethodSignature
+     * @param ttlMillis 该方法的帧写入缓存后的有效时间
+     * @param request
+     * @param compressor 响应的压缩方式编号
+     * @return
+     * @throws IOException
+     */
+    public Key keyOf(String signature, long ttlMillis, RpcRequest request, byte compressor) throws IOException {
+        // 只带参数的请求对象，所有序列化方式都可以序列化
+        RpcRequest arguments = new RpcRequest();
+        arguments.setParameters(request.getParameters());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(signature.getBytes(StandardCharsets.UTF_8));
+        // 签名中不会出现的分隔符
+        out.write(0);
+        out.write(request.getSerializer());
+        out.write(compressor);
+        Serializers.get(request.getSerializer()).serialize(arguments, out);
+        return new Key(out.toByteArray(), TimeUnit.MILLISECONDS.toNanos(ttlMillis));
+    }
+
+    /**
+     * 复制缓存的响应帧并改写请求编号
+     * @param key
+     * @param requestId
+     * @param alloc
+     * @return 可以直接写入连接的帧，未命中时返回 null
+     */
+    public ByteBuf get(Key key, long requestId, ByteBufAllocator alloc) {
+        ByteBuf cached = cache.getIfPresent(key);
+        if (cached == null) {
+            return null;
+        }
+        try {
+            cached.retain();
+        } catch (IllegalReferenceCountException e) {
+            // 刚刚被淘汰并释放
+            return null;
+        }
+        try {
+            ByteBuf frame = alloc.directBuffer(cached.readableBytes());
+            frame.writeBytes(cached, cached.readerIndex(), cached.readableBytes());
+            frame.setLong(REQUEST_ID_OFFSET, requestId);
+            return frame;
+        } finally {
+            cached.release();
+        }
+    }
+
+    /**
+     * 缓存编码好的响应帧，复制到独立的堆外内存中，不占用连接的内存池
+     * @param key
+     * @param frame 不改变其读写位置和引用计数
+     */
+    public void put(Key key, ByteBuf frame) {
+        ByteBuf copy = Unpooled.directBuffer(frame.readableBytes());
+        copy.writeBytes(frame, frame.readerIndex(), frame.readableBytes());
+        cache.put(key, copy);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    @Override
+    public long getHitCount() {
+        return cache.stats().hitCount();
+    }
+
+    @Override
+    public long getMissCount() {
+        return cache.stats().missCount();
+    }
+
+    @Override
+    public double getHitRate() {
+        return cache.stats().hitRate();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return cache.stats().evictionCount();
+    }
+
+    @Override
+    public long getSize() {
+        return cache.estimatedSize();
+    }
+
+    @Override
+    public long getBytes() {
+        return cache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L);
+    }
+
+    /**
+     * 缓存键，按内容比较字节，有效时间由所属方法决定，不参与比较
+     */
+    public static final class Key {
+
+        private final byte[] bytes;
+        private final int hash;
+        private final long ttlNanos;
+
+        Key(byte[] bytes, long ttlNanos) {
+            this.bytes = bytes;
+            this.hash = Arrays.hashCode(bytes);
+            this.ttlNanos = ttlNanos;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || (o instanceof Key && hash == ((Key) o).hash && Arrays.equals(bytes, ((Key) o).bytes));
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.osako.rpc.server;
+
+/**
+ * 服务方法响应缓存的 JMX 视图
+ */
+public interface ResponseCacheMBean {
+
+    long getHitCount();
+
+    long getMissCount();
+
+    double getHitRate();
+
+    long getEvictionCount();
+
+    long getSize();
+
+    /**
+     * 缓存的帧占用的堆外内存字节数
+     */
+    long getBytes();
+}
@@ -1,29 +1,54 @@
 package com.osako.rpc.server;
 
+import com.osako.codec.BatchSplitter;
+import com.osako.codec.BatchWriter;
+import com.osako.codec.ProtocolConstant;
 import com.osako.codec.RpcDecoder;
 import com.osako.codec.RpcEncoder;
+import com.osako.compress.Compressors;
+import com.osako.entity.Heartbeat;
 import com.osako.entity.RpcRequest;
 import com.osako.entity.RpcResponse;
+import com.osako.metrics.MetricsRegistry;
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.unix.DomainSocketAddress;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.handler.timeout.IdleStateHandler;
 import org.apache.commons.collections4.MapUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeansException;
+import org.springframework.beans.FatalBeanException;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
+import com.osako.rpc.registry.Provider;
 import com.osako.rpc.registry.ServiceRegistry;
+import com.osako.rpc.registry.local.LocalRegistry;
+import com.osako.serializer.ProtostuffSerializer;
+import com.osako.serializer.Serializers;
+import com.osako.transport.Transports;
 
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Netty / RPC 服务器，用于发布 RPC 服务
@@ -41,6 +66,73 @@ public class RpcServer implements ApplicationContextAware, InitializingBean {
     // 存放服务名称（被暴露的实现类的接口名称）与服务对象（被暴露的实现类）
     private Map<String, Object> handlerMap = new HashMap<>();
 
+    // 服务名称-版本号 与 该服务的 @RpcService（声明了 threads 的服务），start() 据此创建独立的业务线程池
+    private Map<String, RpcService> executorConfigs = new HashMap<>();
+
+    // 服务名称-版本号 与 该服务独立的业务线程池，start() 创建，stop() 关闭并清空
+    private Map<String, ExecutorService> executorMap = new HashMap<>();
+
+    // 服务方法调用表（服务方法 与 预先绑定好的调用器），扫描服务时构建，之后不再修改
+    private Map<MethodKey, MethodInvoker> invokerMap = Map.of();
+
+    // 方法编号字典：方法签名 与 编号，握手时发给客户端，之后客户端只需发送编号
+    private Map<String, Integer> methodIds = Map.of();
+
+    // 按编号索引的调用器，编号从 1 开始，下标 0 不使用
+    private MethodInvoker[] invokerTable = new MethodInvoker[1];
+
+    // 共享业务线程池的配置，服务方法不在 Netty 的 I/O 线程中执行
+    private int threads = 200;
+    private int queues = 1024;
+    // JDK 21+ 上每个请求使用一个虚拟线程执行
+    private boolean virtualThreads;
+
+    // 接受的请求序列化方式（序列化器编号），请求使用其它序列化方式时关闭连接；默认只接受 Protostuff
+    private Set<Byte> serializers = Set.of(ProtostuffSerializer.ID);
+
+    // 单个请求帧的最大长度，超过时关闭连接
+    private int maxFrameLength = RpcDecoder.DEFAULT_MAX_FRAME_LENGTH;
+
+    // 超过该长度的响应体被压缩（服务或请求指定了压缩方式时）
+    private int compressThreshold = RpcEncoder.DEFAULT_COMPRESS_THRESHOLD;
+
+    // 批量请求的响应也批量写回：最多等待的微秒数与每批最多的响应数
+    // 等待时间为 0 表示不等待定时器，批量写回事件循环中已经排队的响应
+    private int batchMaxDelayMicros = 0;
+    private int batchMaxSize = 64;
+
+    // 客户端在该时间内没有发送任何数据（包括心跳）则关闭连接
+    private int idleTimeoutSeconds = Heartbeat.IDLE_TIMEOUT_SECONDS;
+
+    // 单个连接的在途请求数上限，达到时暂停读取该连接，0 表示不限制
+    private int maxInFlightPerConnection = 1024;
+
+    // 连接写缓冲区的高 / 低水位线（字节），超过高水位线时暂停读取该连接，降到低水位线以下时恢复
+    private int writeBufferLowWaterMark = 32 * 1024;
+    private int writeBufferHighWaterMark = 64 * 1024;
+
+    // 写入注册中心的权重与可用区
+    private int weight = Provider.DEFAULT_WEIGHT;
+    private String zone = "";
+
+    // 使用原生 epoll 传输（仅 Linux，不可用时使用 NIO），以及 epoll 下接收连接的线程数
+    private boolean nativeTransport;
+    private int acceptors = 1;
+
+    // 同时监听的 Unix 域套接字路径（需要 epoll），null 表示不监听
+    private String unixSocketPath;
+
+    // 所有缓存响应的方法共享的响应缓存及其占用的堆外内存上限（字节），有方法缓存响应时才创建
+    private long responseCacheMaxBytes = 64 * 1024 * 1024;
+    private ResponseCache responseCache;
+
+    // start() 创建，stop() 释放
+    private EventLoopGroup bossGroup;
+    private EventLoopGroup workerGroup;
+    private ExecutorService defaultExecutor;
+    // 监听 TCP 端口（每个接收线程一个）和 Unix 域套接字的服务器 Channel
+    private final List<Channel> serverChannels = new ArrayList<>();
+
     /**
      * // todo：以下两个构造器，用于提供给用户在 Spring 配置文件中通过构造函数注入？？？
      * @param serviceAddress
@@ -54,6 +146,110 @@ public class RpcServer implements ApplicationContextAware, InitializingBean {
         this.serviceRegistry = serviceRegistry;
     }
 
+    public void setIdleTimeoutSeconds(int idleTimeoutSeconds) {
+        this.idleTimeoutSeconds = idleTimeoutSeconds;
+    }
+
+    /**
+     * 接受的请求序列化方式，注册中心中只公布这些序列化方式
+     * 反序列化不可信的请求会实例化请求中指定的类：启用 Kryo 需要注册参数与结果的类（KryoSerializer.register），
+     * 启用 Hessian / JDK 需要允许这些类（HessianSerializer.allow / JdkSerializer.setFilter）
+     * @param serializers 序列化器编号
+     */
+    public void setSerializers(Set<Byte> serializers) {
+        if (serializers.isEmpty()) {
+            throw new IllegalArgumentException("no serializer accepted");
+        }
+        for (byte id : serializers) {
+            // 未注册的编号抛出异常
+            Serializers.get(id);
+        }
+        this.serializers = Set.copyOf(serializers);
+    }
+
+    public void setMaxFrameLength(int maxFrameLength) {
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    public void setCompressThreshold(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
+    public void setBatching(int maxDelayMicros, int maxBatchSize) {
+        this.batchMaxDelayMicros = maxDelayMicros;
+        this.batchMaxSize = maxBatchSize;
+    }
+
+    public void setMaxInFlightPerConnection(int maxInFlightPerConnection) {
+        this.maxInFlightPerConnection = maxInFlightPerConnection;
+    }
+
+    public void setWriteBufferWaterMark(int low, int high) {
+        this.writeBufferLowWaterMark = low;
+        this.writeBufferHighWaterMark = high;
+    }
+
+    /**
+     * 响应缓存（所有 @RpcService 的 cacheMethods 共享）占用的堆外内存上限，超过时淘汰最不常用的帧
+     * @param responseCacheMaxBytes
+     */
+    public void setResponseCacheMaxBytes(long responseCacheMaxBytes) {
+        this.responseCacheMaxBytes = responseCacheMaxBytes;
+    }
+
+    /**
+     * 注册中心中本服务器的权重，按权重选择服务提供者的客户端使用
+     * @param weight
+     */
+    public void setWeight(int weight) {
+        this.weight = weight;
+    }
+
+    /**
+     * 注册中心中本服务器所在的可用区，客户端可以优先选择同一可用区的服务提供者
+     * @param zone
+     */
+    public void setZone(String zone) {
+        this.zone = zone;
+    }
+
+    /**
+     * 在 Linux 上使用 Netty 的原生 epoll 传输代替 NIO，不可用时（其它系统、缺少原生库）仍然使用 NIO
+     * @param nativeTransport
+     */
+    public void setNativeTransport(boolean nativeTransport) {
+        this.nativeTransport = nativeTransport;
+    }
+
+    /**
+     * 接收连接的线程数，大于 1 时以 SO_REUSEPORT 绑定多个服务器 Channel 到同一端口，由内核在它们之间分配新连接
+     * 需要原生 epoll 传输
+     * @param acceptors
+     */
+    public void setAcceptors(int acceptors) {
+        this.acceptors = acceptors;
+    }
+
+    /**
+     * 同时监听该路径的 Unix 域套接字（需要原生 epoll 传输），路径随服务地址注册，同一主机上的客户端经由它连接
+     * @param unixSocketPath
+     */
+    public void setUnixSocketPath(String unixSocketPath) {
+        this.unixSocketPath = unixSocketPath;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public void setQueues(int queues) {
+        this.queues = queues;
+    }
+
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
     /**
      * Spring容器在加载时会自动调用一次 setApplicationContext, 并将上下文 ApplicationContext传递给这个方法，
      * 该方法的作用就是获取带有 @com.osako.rpc.server.RpcService 注解的类的 interfaceName（被暴露的实现类的接口名称）和 version（被暴露的实现类的版本号）
@@ -65,6 +261,7 @@ public class RpcServer implements ApplicationContextAware, InitializingBean {
         // 扫描所有带有 @RpcService注解的类
         LOGGER.info("We are here !!!!!!!!!");
         Map<String, Object> serviceBeanMap = applicationContext.getBeansWithAnnotation(RpcService.class);
+        Map<MethodKey, MethodInvoker> invokers = new HashMap<>();
         if (MapUtils.isNotEmpty(serviceBeanMap)) {
             for (Object serviceBean : serviceBeanMap.values()) {
                 // 获取类上的注解 @com.osako.rpc.server.RpcService
@@ -82,64 +279,244 @@ public class RpcServer implements ApplicationContextAware, InitializingBean {
                 }
                 // 将服务名称-版本号 与 服务对象 存入 handlerMap
                 handlerMap.put(serviceName, serviceBean);
+                // 声明了独立线程池的服务，线程池在 start() 中创建
+                if (rpcService.threads() > 0) {
+                    executorConfigs.put(serviceName, rpcService);
+                }
+                // 该服务声明的响应压缩方式
+                byte compressor = 0;
+                if (!StringUtils.isEmpty(rpcService.compressor())) {
+                    try {
+                        compressor = Compressors.get(rpcService.compressor()).getId();
+                    } catch (IllegalArgumentException e) {
+                        throw new FatalBeanException(String.format("Illegal compressor of service: %s", serviceName), e);
+                    }
+                }
+                // 该服务声明的在途请求数限制，所有方法共享
+                InFlightLimiter limiter = rpcService.maxInFlight() > 0 ? new InFlightLimiter(rpcService.maxInFlight()) : null;
+                // 该服务声明了缓存响应的方法
+                Set<String> cacheMethods = Set.of(rpcService.cacheMethods());
+                // 为接口中的每个方法创建预先绑定服务对象的调用器，存入调用表
+                for (Method method : rpcService.interfaceName().getMethods()) {
+                    MethodKey key = new MethodKey(rpcService.interfaceName().getName(), serviceVersion,
+                            method.getName(), method.getParameterTypes());
+                    ResponseCache cache = null;
+                    if (cacheMethods.contains(method.getName())) {
+                        cache = responseCache();
+                    }
+                    try {
+                        invokers.put(key, new MethodInvoker(serviceName, serviceBean, method, null, compressor, limiter,
+                                cache, rpcService.cacheTtlMillis()));
+                    } catch (IllegalAccessException e) {
+                        throw new FatalBeanException(String.format("Cannot create invoker of service method: %s", key), e);
+                    }
+                }
             }
         }
+        invokerMap = Map.copyOf(invokers);
+        // 按方法签名排序后编号，同一份服务代码每次启动得到相同的编号
+        List<MethodKey> keys = new ArrayList<>(invokers.keySet());
+        keys.sort(Comparator.comparing(MethodKey::toString));
+        Map<String, Integer> ids = new HashMap<>();
+        MethodInvoker[] table = new MethodInvoker[keys.size() + 1];
+        for (int i = 0; i < keys.size(); i++) {
+            ids.put(keys.get(i).toString(), i + 1);
+            table[i + 1] = invokers.get(keys.get(i));
+        }
+        methodIds = Map.copyOf(ids);
+        invokerTable = table;
+    }
+
+    /**
+     * 第一个缓存响应的方法创建共享的响应缓存
+     */
+    private ResponseCache responseCache() {
+        if (responseCache == null) {
+            responseCache = new ResponseCache(responseCacheMaxBytes);
+            MetricsRegistry.server().registerMBean("ResponseCache", responseCache);
+        }
+        return responseCache;
     }
 
     /**
      * 在初始化 Bean 的时候会自动执行该方法
      * 该方法的目的是启动 Netty 服务器进行服务端和客户端的通信，接收并处理客户端发来的的请求
+     * 阻塞直到服务器 Channel 关闭
      * @throws Exception
      */
     @Override
     public void afterPropertiesSet() throws Exception {
-        // 1.bossGroup线程用于接受连接，workerGroup线程用于具体处理。
-        NioEventLoopGroup bossGroup = new NioEventLoopGroup();
-        NioEventLoopGroup workerGroup = new NioEventLoopGroup();
+        start();
+        try {
+            // todo: 阻塞等待直到服务器Channel关闭 (closeFuture()方法获取Channel 的CloseFuture对象,然后调用sync()方法)
+            serverChannels.get(0).closeFuture().sync();
+        } finally {
+            stop();
+        }
+    }
+
+    /**
+     * 启动 Netty 服务器并注册服务，绑定完成后立即返回（不阻塞），用于不经过 Spring 初始化回调的场景
+     * 需要先调用 setApplicationContext 扫描服务
+     * @throws InterruptedException
+     */
+    public void start() throws InterruptedException {
+        // Linux 上可以使用原生 epoll 传输，多个接收线程和 Unix 域套接字都需要 epoll
+        boolean epoll = nativeTransport && Transports.isEpollAvailable();
+        if (nativeTransport && !epoll) {
+            LOGGER.warn("native transport is not available, use NIO: {}", String.valueOf(Transports.epollUnavailabilityCause()));
+        }
+        int acceptors = epoll ? Math.max(this.acceptors, 1) : 1;
+        if (this.acceptors > 1 && !epoll) {
+            LOGGER.warn("multiple acceptors need the native transport, use one");
+        }
+        boolean unixSocket = unixSocketPath != null && epoll;
+        if (unixSocketPath != null && !epoll) {
+            LOGGER.warn("Unix domain socket needs the native transport, not listening on {}", unixSocketPath);
+        }
+        // 1.bossGroup线程用于接受连接（每个接收线程一个），workerGroup线程用于具体处理。
+        bossGroup = Transports.newEventLoopGroup(epoll, acceptors + (unixSocket ? 1 : 0));
+        workerGroup = Transports.newEventLoopGroup(epoll, 0);
+        // 2.业务线程池，服务方法在这里执行
+        ExecutorService defaultExecutor = virtualThreads
+                ? ServiceExecutors.newVirtualThreadExecutor("rpc-service", threads, queues)
+                : ServiceExecutors.newBoundedExecutor("rpc-service", threads, queues);
+        this.defaultExecutor = defaultExecutor;
+        // 声明了独立线程池的服务，每次启动创建新的线程池
+        executorConfigs.forEach((serviceName, rpcService) -> executorMap.put(serviceName,
+                ServiceExecutors.newBoundedExecutor("rpc-" + serviceName, rpcService.threads(), rpcService.queues())));
+        for (MethodInvoker invoker : invokerMap.values()) {
+            invoker.setExecutor(executorMap.get(invoker.getServiceName()));
+        }
+        boolean started = false;
         try {
             // 创建并初始化 Netty服务端Bootstrap对象，即服务器引导类
             ServerBootstrap bootstrap = new ServerBootstrap();
             // 3.给引导类配置两大线程组,确定了线程模型
             bootstrap.group(bossGroup, workerGroup);
-            // 4.指定 IO 模型为 NIO
-            bootstrap.channel(NioServerSocketChannel.class);
-            bootstrap.childHandler(new ChannelInitializer<SocketChannel>() {
+            // 4.指定 IO 模型为 NIO 或 epoll（与线程组一致）
+            bootstrap.channel(Transports.serverChannelClass(bossGroup));
+            // TCP 连接与 Unix 域套接字连接使用相同的处理器
+            ChannelInitializer<Channel> childHandler = new ChannelInitializer<Channel>() {
                 @Override
-                public void initChannel(SocketChannel channel) throws Exception {
+                public void initChannel(Channel channel) throws Exception {
                     ChannelPipeline pipeline = channel.pipeline();
-                    pipeline.addLast(new RpcDecoder(RpcRequest.class)); // 解码器，解码RPC请求
-                    pipeline.addLast(new RpcEncoder(RpcResponse.class)); // 编码器，编码RPC响应
-                    pipeline.addLast(new RpcServerHandler(handlerMap)); // 处理RPC请求
+                    // 合并短时间内的多次 flush，减少系统调用
+                    pipeline.addLast(new FlushConsolidationHandler(FlushConsolidationHandler.DEFAULT_EXPLICIT_FLUSH_AFTER_FLUSHES, true));
+                    pipeline.addLast(new IdleStateHandler(idleTimeoutSeconds, 0, 0)); // 定时检测空闲连接
+                    pipeline.addLast(new RpcDecoder(RpcRequest.class, maxFrameLength, serializers)); // 解码器，解码RPC请求（只接受配置的序列化方式）
+                    pipeline.addLast(new BatchSplitter()); // 拆分批量请求
+                    RpcEncoder encoder = new RpcEncoder(RpcResponse.class, compressThreshold);
+                    pipeline.addLast(encoder); // 编码器，编码RPC响应
+                    BatchWriter batchWriter = new BatchWriter(channel, batchMaxDelayMicros, batchMaxSize);
+                    pipeline.addLast(new RpcServerHandler(invokerMap, invokerTable, methodIds, defaultExecutor, batchWriter,
+                            maxInFlightPerConnection, encoder)); // 处理RPC请求
                 }
-            });
+            };
+            bootstrap.childHandler(childHandler);
             // todo: ?????
             bootstrap.option(ChannelOption.SO_BACKLOG, 1024);
-            // TCP 协议的心跳机制
+            // TCP 协议的心跳机制（只作兜底，失效连接由 IdleStateHandler + 应用层心跳回收）
             bootstrap.childOption(ChannelOption.SO_KEEPALIVE, true);
+            // 客户端来不及接收响应时，写缓冲区超过高水位线后连接变为不可写，RpcServerHandler 暂停读取该连接
+            bootstrap.childOption(ChannelOption.WRITE_BUFFER_WATER_MARK,
+                    new WriteBufferWaterMark(writeBufferLowWaterMark, writeBufferHighWaterMark));
             // 获取服务地址与端口号
             String[] addressArray = StringUtils.split(serviceAddress,":");
             String ip = addressArray[0];
             int port = Integer.parseInt(addressArray[1]);
             // 启动 RPC 服务器
             // todo: sync ??? 还是要看看 // 6.绑定端口,调用 sync 方法阻塞直到绑定完成
-            ChannelFuture future = bootstrap.bind(ip, port).sync();
-            if (serviceRegistry != null) {
-
-                for (String interfaceName : handlerMap.keySet()) {
-                    serviceRegistry.register(interfaceName, serviceAddress);
-                    LOGGER.info("register service: {} => {}", interfaceName, serviceAddress);
-                    // 关闭 RPC 服务器
+            if (acceptors > 1) {
+                // 多个服务器 Channel 以 SO_REUSEPORT 绑定同一端口，各自在一个接收线程中，由内核分配新连接
+                bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+            }
+            for (int i = 0; i < acceptors; i++) {
+                ChannelFuture future = bootstrap.bind(ip, port).sync();
+                serverChannels.add(future.channel());
+            }
+            if (unixSocket) {
+                // 同一主机上的客户端可以经由 Unix 域套接字连接，不经过 TCP/IP 协议栈
+                try {
+                    // 上次运行留下的套接字文件
+                    Files.deleteIfExists(Path.of(unixSocketPath));
+                } catch (IOException e) {
+                    throw new RuntimeException(String.format("cannot delete Unix domain socket: %s", unixSocketPath), e);
                 }
+                ServerBootstrap unixBootstrap = new ServerBootstrap();
+                unixBootstrap.group(bossGroup, workerGroup);
+                unixBootstrap.channel(Transports.serverDomainSocketChannelClass());
+                unixBootstrap.childHandler(childHandler);
+                unixBootstrap.childOption(ChannelOption.WRITE_BUFFER_WATER_MARK,
+                        new WriteBufferWaterMark(writeBufferLowWaterMark, writeBufferHighWaterMark));
+                serverChannels.add(unixBootstrap.bind(new DomainSocketAddress(unixSocketPath)).sync().channel());
+                LOGGER.info("server listening on {}", unixSocketPath);
+            }
+            // 同一 JVM 中的 RpcProxy 可以直接调用已暴露的服务对象
+            handlerMap.forEach(LocalRegistry::register);
+            if (serviceRegistry != null) {
+                // 一次注册所有服务，地址节点中带有本服务器的元数据，注册中心定期用当前的负载刷新
+                long startTime = System.currentTimeMillis();
+                Set<Byte> compressors = Compressors.ids();
+                serviceRegistry.register(handlerMap.keySet(), () -> new Provider(ip, port, weight, zone,
+                        ProtocolConstant.VERSION, serializers, compressors, startTime,
+                        (int) MetricsRegistry.server().getPendingRequests(), unixSocket ? unixSocketPath : ""));
+                LOGGER.info("register services: {} => {}", handlerMap.keySet(), serviceAddress);
             }
 //            System.out.println("================================");
 //            System.out.println(serviceRegistry == null);
             LOGGER.info("server started on port {}", port);
-            // todo: 阻塞等待直到服务器Channel关闭 (closeFuture()方法获取Channel 的CloseFuture对象,然后调用sync()方法)
-            future.channel().closeFuture().sync();
+            started = true;
         } finally {
+            if (!started) {
+                stop();
+            }
+        }
+    }
+
+    /**
+     * 从注册中心注销服务，关闭服务器 Channel，释放线程组与业务线程池；之后可以再次 start()
+     */
+    public void stop() {
+        if (serviceRegistry != null) {
+            // 先注销，客户端不再把请求发到正在关闭的服务器
+            try {
+                serviceRegistry.unregister();
+            } catch (RuntimeException e) {
+                LOGGER.warn("cannot unregister services: {}", e.toString());
+            }
+        }
+        handlerMap.forEach(LocalRegistry::unregister);
+        for (Channel channel : serverChannels) {
+            channel.close();
+            if (channel.localAddress() instanceof DomainSocketAddress) {
+                try {
+                    Files.deleteIfExists(Path.of(((DomainSocketAddress) channel.localAddress()).path()));
+                } catch (IOException e) {
+                    LOGGER.warn("cannot delete Unix domain socket: {}", e.toString());
+                }
+            }
+        }
+        serverChannels.clear();
+        if (workerGroup != null) {
             workerGroup.shutdownGracefully();
+        }
+        if (bossGroup != null) {
             bossGroup.shutdownGracefully();
         }
+        if (defaultExecutor != null) {
+            defaultExecutor.shutdown();
+            defaultExecutor = null;
+        }
+        for (ExecutorService executor : executorMap.values()) {
+            executor.shutdown();
+        }
+        executorMap.clear();
+        if (responseCache != null) {
+            // 释放缓存帧占用的堆外内存，重新 start() 后不会返回停止前编码的响应
+            // 调用器只在扫描服务时创建一次并一直使用这个缓存，所以保留引用，每次 stop() 都清空它
+            responseCache.invalidateAll();
+        }
     }
 
 }
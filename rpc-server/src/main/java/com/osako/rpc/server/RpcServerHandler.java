@@ -1,16 +1,33 @@
 package com.osako.rpc.server;
 
+import com.osako.codec.BatchWriter;
+import com.osako.codec.RpcEncoder;
+import com.osako.entity.Heartbeat;
+import com.osako.entity.MessageType;
 import com.osako.entity.RpcRequest;
 import com.osako.entity.RpcResponse;
-import io.netty.channel.ChannelFutureListener;
+import com.osako.exception.RpcTimeoutException;
+import com.osako.metrics.MetricsRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
-import org.apache.zookeeper.common.StringUtils;
+import io.netty.handler.timeout.IdleState;
+import io.netty.handler.timeout.IdleStateEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.reflect.Method;
+import java.io.IOException;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Netty / RPC 服务端处理器 （处理rpc请求）
@@ -19,62 +36,330 @@ public class RpcServerHandler extends SimpleChannelInboundHandler<RpcRequest> {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(RpcServerHandler.class);
 
-    private final Map<String, Object> handlerMap;
+    // 服务方法调用表，在 RpcServer 扫描服务时构建，不可变
+    private final Map<MethodKey, MethodInvoker> invokerMap;
 
-    public RpcServerHandler(Map<String, Object> handlerMap) {
-        this.handlerMap = handlerMap;
+    // 按方法编号索引的调用器，编号即握手字典中的值
+    private final MethodInvoker[] invokerTable;
+
+    // 方法编号字典（方法签名 与 编号），握手时发给客户端
+    private final Map<String, Integer> methodIds;
+
+    // 共享的业务线程池，未声明独立线程池的服务使用
+    private final Executor defaultExecutor;
+
+    // 以批量帧收到的请求，其响应也打包成批量帧写回
+    private final BatchWriter batchWriter;
+
+    // 该连接上正在发送的流式结果，requestId 与 发送端
+    private final Map<Long, StreamSender> streams = new ConcurrentHashMap<>();
+
+    // 该连接上在途（排队中和执行中）请求数的上限，达到上限时暂停读取该连接，0 表示不限制
+    private final int maxInFlight;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    // 该连接的响应编码器，缓存响应的方法在业务线程中用它编码出响应帧
+    private final RpcEncoder encoder;
+
+    public RpcServerHandler(Map<MethodKey, MethodInvoker> invokerMap, MethodInvoker[] invokerTable,
+                            Map<String, Integer> methodIds, Executor defaultExecutor, BatchWriter batchWriter,
+                            int maxInFlight, RpcEncoder encoder) {
+        this.invokerMap = invokerMap;
+        this.invokerTable = invokerTable;
+        this.methodIds = methodIds;
+        this.defaultExecutor = defaultExecutor;
+        this.batchWriter = batchWriter;
+        this.maxInFlight = maxInFlight;
+        this.encoder = encoder;
     }
 
     @Override
     public void channelRead0(final ChannelHandlerContext ctx, RpcRequest request) throws Exception {
-        //
+        if (request.isHeartbeat()) {
+            // 心跳请求，直接回复 pong
+            ctx.writeAndFlush(Heartbeat.pong());
+            return;
+        }
+        if (request.getMessageType() == MessageType.HANDSHAKE) {
+            // 握手请求，回复方法编号字典
+            RpcResponse response = new RpcResponse();
+            response.setMessageType(MessageType.HANDSHAKE);
+            response.setRequestId(request.getRequestId());
+            response.setSerializer(request.getSerializer());
+            response.setResult(new HashMap<>(methodIds));
+            ctx.writeAndFlush(response);
+            return;
+        }
+        if (request.getMessageType() == MessageType.CREDIT) {
+            // 客户端消费了流中的元素，可以继续发送
+            StreamSender stream = streams.get(request.getRequestId());
+            if (stream != null) {
+                stream.onCredit((Integer) request.getParameters()[0]);
+            }
+            return;
+        }
+        if (request.getMessageType() == MessageType.CANCEL) {
+            StreamSender stream = streams.get(request.getRequestId());
+            if (stream != null) {
+                stream.cancel();
+            }
+            return;
+        }
+        MethodInvoker invoker;
+        int methodId = request.getMethodId();
+        if (methodId != 0) {
+            // 握手后的请求只带方法编号，直接按下标取调用器
+            invoker = methodId > 0 && methodId < invokerTable.length ? invokerTable[methodId] : null;
+            if (invoker == null) {
+                writeException(ctx, request, new RuntimeException(
+                        String.format("Cannot find service method by id: %d", methodId)));
+                return;
+            }
+        } else {
+            // 一次哈希查找得到预先绑定好的调用器
+            invoker = invokerMap.get(MethodKey.of(request));
+            if (invoker == null) {
+                writeException(ctx, request, new RuntimeException(
+                        String.format("Cannot find service method by key: %s", MethodKey.of(request))));
+                return;
+            }
+        }
+        if (!invoker.tryAcquire()) {
+            // 服务的在途请求数已达上限，不排队，直接回复过载
+            LOGGER.debug("service {} is overloaded, reject request: {}", invoker.getServiceName(), request.getRequestId());
+            writeOverloaded(ctx, request);
+            return;
+        }
+        if (inFlight.incrementAndGet() == maxInFlight) {
+            // 该连接的在途请求数达到上限，暂停读取，请求积压在客户端和 TCP 缓冲区中
+            updateAutoRead(ctx.channel());
+        }
+        // 服务方法交给业务线程池执行，慢服务不会阻塞 I/O 线程上的其它连接
+        Executor executor = invoker.getExecutor() != null ? invoker.getExecutor() : defaultExecutor;
+        // 收到请求的时间，排队时间和执行时间分别统计
+        long receivedNanos = invoker.getMetrics().begin();
+        try {
+            executor.execute(() -> process(ctx, request, invoker, receivedNanos));
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("service is busy, reject request: {}", request.getRequestId());
+            complete(ctx, invoker, receivedNanos, System.nanoTime(), true);
+            writeOverloaded(ctx, request);
+        }
+    }
+
+    /**
+     * 在业务线程中调用服务方法并写回响应，缓存响应的方法先查找响应缓存
+     * @param ctx
+     * @param request
+     * @param invoker
+     * @param receivedNanos I/O 线程收到请求的时间
+     */
+    private void process(ChannelHandlerContext ctx, RpcRequest request, MethodInvoker invoker, long receivedNanos) {
+        long startNanos = System.nanoTime();
+        long timeoutMillis = request.getTimeoutMillis();
+        if (timeoutMillis > 0 && startNanos - receivedNanos >= TimeUnit.MILLISECONDS.toNanos(timeoutMillis)) {
+            // 在队列中等待时已经用完了客户端给的时间（从收到请求时算起，不依赖两端的时钟同步），不再执行，回复超时
+            LOGGER.debug("skip expired request: {}", request.getRequestId());
+            complete(ctx, invoker, receivedNanos, startNanos, true);
+            writeException(ctx, request, new RpcTimeoutException(String.format(
+                    "request %d expired after waiting %d ms on the server", request.getRequestId(),
+                    TimeUnit.NANOSECONDS.toMillis(startNanos - receivedNanos))));
+            return;
+        }
+        // 缓存键要序列化参数，和命中时复制帧一样在业务线程中、通过准入控制之后进行
+        ResponseCache responseCache = invoker.getResponseCache();
+        ResponseCache.Key cacheKey = responseCache != null && request.getMessageType() != MessageType.ONE_WAY
+                ? cacheKeyOf(request, invoker) : null;
+        if (cacheKey != null) {
+            ByteBuf frame = responseCache.get(cacheKey, request.getRequestId(), ctx.alloc());
+            if (frame != null) {
+                // 命中响应缓存，直接写回缓存的帧，不调用服务方法，也不序列化响应
+                complete(ctx, invoker, receivedNanos, startNanos, false);
+                ctx.writeAndFlush(frame);
+                return;
+            }
+        }
         RpcResponse response = new RpcResponse();
         response.setRequestId(request.getRequestId()); // 指定该 response 对应的 request id
+        response.setSerializer(request.getSerializer()); // 使用与请求相同的序列化方式
+        // 服务声明了压缩方式时使用服务的，否则使用与请求相同的压缩方式
+        response.setCompressor(invoker.getCompressor() != 0 ? invoker.getCompressor() : request.getCompressor());
         try {
-            Object result = handle(request);
+            Object result = invoker.invoke(request.getParameters());
+            if (StreamSender.isStream(result)) {
+                // 流式结果，逐个元素发送，发送完或被取消时才归还在途请求名额
+                Executor executor = invoker.getExecutor() != null ? invoker.getExecutor() : defaultExecutor;
+                new StreamSender(ctx, request, executor, response.getCompressor(), streams,
+                        cause -> complete(ctx, invoker, receivedNanos, startNanos, cause != null)).start(result);
+                return;
+            }
+            if (result instanceof CompletionStage) {
+                // 异步服务方法，等返回的 CompletionStage 完成后再写回响应
+                ((CompletionStage<?>) result).whenComplete((value, cause) -> {
+                    if (cause != null) {
+                        Throwable error = cause instanceof CompletionException && cause.getCause() != null ? cause.getCause() : cause;
+                        LOGGER.error("handle result failure", error);
+                        response.setException(error instanceof Exception ? (Exception) error : new RuntimeException(error));
+                    } else {
+                        response.setResult(value);
+                    }
+                    complete(ctx, invoker, receivedNanos, startNanos, response.hasException());
+                    writeResponse(ctx, request, response, invoker, cacheKey);
+                });
+                return;
+            }
             response.setResult(result);
         } catch (Exception e) {
             LOGGER.error("handle result failure", e);
             response.setException(e);
         }
-        // 写入 RPC 响应对象并自动关闭连接 //todo ：addListener ???????
-        ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+        complete(ctx, invoker, receivedNanos, startNanos, response.hasException());
+        writeResponse(ctx, request, response, invoker, cacheKey);
     }
 
     /**
-     * 处理请求 （获取客户端请求的方法和参数，通过反射进行调用）
-     * @param request
-     * @return 调用结果
-     * @throws Exception
+     * 计算响应缓存的键
+     * @return 参数无法序列化时返回 null，不缓存该响应
      */
-    private Object handle(RpcRequest request) throws Exception {
-        String serviceName = request.getInterfaceName();
-        String serviceVersion = request.getServiceVersion();
-        if (serviceVersion != null) {
-            serviceVersion = serviceVersion.trim();
-            if (!StringUtils.isEmpty(serviceVersion)) {
-                serviceName += "-" + serviceVersion;
+    private ResponseCache.Key cacheKeyOf(RpcRequest request, MethodInvoker invoker) {
+        byte compressor = invoker.getCompressor() != 0 ? invoker.getCompressor() : request.getCompressor();
+        try {
+            return invoker.getResponseCache().keyOf(invoker.getSignature(), invoker.getCacheTtlMillis(), request, compressor);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.debug("cannot cache response of request {}: {}", request.getRequestId(), e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * 写入响应，缓存响应的方法成功时先编码成帧放入缓存，再写回该帧
+     * 缓存的帧不经过 BatchWriter，批量请求的这类响应也单独成帧写回
+     */
+    private void writeResponse(ChannelHandlerContext ctx, RpcRequest request, RpcResponse response,
+                               MethodInvoker invoker, ResponseCache.Key cacheKey) {
+        if (cacheKey == null || response.hasException()) {
+            writeResponse(ctx, request, response);
+            return;
+        }
+        ByteBuf frame = ctx.alloc().directBuffer();
+        try {
+            encoder.writeFrame(response, frame);
+        } catch (Exception e) {
+            // 交给编码器按正常流程编码，由它报告编码失败
+            frame.release();
+            writeResponse(ctx, request, response);
+            return;
+        }
+        invoker.getResponseCache().put(cacheKey, frame);
+        ctx.writeAndFlush(frame);
+    }
+
+    /**
+     * 请求处理完成：记录统计，归还服务和连接的在途请求名额
+     */
+    private void complete(ChannelHandlerContext ctx, MethodInvoker invoker, long receivedNanos, long startNanos, boolean failed) {
+        invoker.getMetrics().end(receivedNanos, startNanos, failed);
+        invoker.release();
+        if (inFlight.decrementAndGet() == maxInFlight - 1) {
+            // 回到上限以下，在 I/O 线程中恢复读取
+            Channel channel = ctx.channel();
+            channel.eventLoop().execute(() -> updateAutoRead(channel));
+        }
+    }
+
+    /**
+     * 连接可写（写缓冲区低于高水位线）并且在途请求数低于上限时才读取该连接，
+     * 处理不过来或者客户端来不及接收响应时，压力通过 TCP 传回客户端
+     * 只在 I/O 线程中调用
+     */
+    private void updateAutoRead(Channel channel) {
+        boolean read = channel.isWritable() && (maxInFlight <= 0 || inFlight.get() < maxInFlight);
+        if (channel.config().isAutoRead() != read) {
+            channel.config().setAutoRead(read);
+            LOGGER.debug("{} reading from {}", read ? "resume" : "pause", channel.remoteAddress());
+        }
+    }
+
+    /**
+     * 回复过载：没有消息体的响应，客户端可以换一个服务提供者重试
+     */
+    private void writeOverloaded(ChannelHandlerContext ctx, RpcRequest request) {
+        RpcResponse response = new RpcResponse();
+        response.setMessageType(MessageType.OVERLOADED);
+        response.setRequestId(request.getRequestId());
+        response.setSerializer(request.getSerializer());
+        writeResponse(ctx, request, response);
+    }
+
+    private void writeException(ChannelHandlerContext ctx, RpcRequest request, Exception exception) {
+        RpcResponse response = new RpcResponse();
+        response.setRequestId(request.getRequestId());
+        response.setSerializer(request.getSerializer());
+        response.setCompressor(request.getCompressor());
+        response.setException(exception);
+        writeResponse(ctx, request, response);
+    }
+
+    /**
+     * 写入 RPC 响应对象，连接保持打开以便客户端复用；单向请求不需要响应
+     */
+    private void writeResponse(ChannelHandlerContext ctx, RpcRequest request, RpcResponse response) {
+        if (request.getMessageType() == MessageType.ONE_WAY) {
+            if (response.hasException()) {
+                LOGGER.warn("one-way request {} failed: {}", request.getRequestId(), response.getException().toString());
             }
+            return;
+        }
+        ChannelFuture future = request.isBatched() ? batchWriter.write(response) : ctx.writeAndFlush(response);
+        // 编码失败时客户端收不到响应，至少记录下来
+        future.addListener(written -> {
+            if (!written.isSuccess()) {
+                LOGGER.error("write response of request {} failed", request.getRequestId(), written.cause());
+            }
+        });
+    }
+
+    /**
+     * 由 IdleStateHandler 定时触发：客户端在超时时间内没有发送任何数据（包括心跳），认为其已失效并关闭连接
+     * @param ctx
+     * @param evt
+     * @throws Exception
+     */
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof IdleStateEvent && ((IdleStateEvent) evt).state() == IdleState.READER_IDLE) {
+            LOGGER.info("close idle connection: {}", ctx.channel().remoteAddress());
+            ctx.close();
+        } else {
+            super.userEventTriggered(ctx, evt);
+        }
+    }
+
+    /**
+     * 写缓冲区超过高水位线时不再读取新请求，降到低水位线以下时恢复
+     * @param ctx
+     * @throws Exception
+     */
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        updateAutoRead(ctx.channel());
+        super.channelWritabilityChanged(ctx);
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        MetricsRegistry.server().connectionOpened();
+        super.channelActive(ctx);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        MetricsRegistry.server().connectionClosed();
+        // 连接已关闭，停止发送所有流
+        for (StreamSender stream : streams.values()) {
+            stream.cancel();
         }
-        // 获取服务对象
-        Object serviceBean = handlerMap.get(serviceName);
-        if (serviceBean == null) {
-            throw new RuntimeException(String.format("Cannot find service bean by key: %s", serviceName));
-        }
-        // 获取反射调用所需的参数
-        Class<?> serviceClass =  serviceBean.getClass();
-        String methodName = request.getMethodName();
-        Class<?>[] parameterTypes = request.getParameterTypes();
-        Object[] parameters = request.getParameters();
-        // 执行反射调用
-        Method method = serviceClass.getMethod(methodName, parameterTypes);
-        method.setAccessible(true);
-//        System.out.println("let us see see");
-//        for (Object p : parameters) {
-//            System.out.println(p);
-//        }
-//        System.out.println(method.invoke(serviceBean, parameters) instanceof String);
-        return method.invoke(serviceBean, parameters);
+        super.channelInactive(ctx);
     }
 
     @Override
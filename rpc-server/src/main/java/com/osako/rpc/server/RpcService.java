@@ -28,4 +28,38 @@ public @interface RpcService {
      * 被暴露的实现类的版本号（服务版本号）
      */
     String version() default "";
+
+    /**
+     * 该服务独立的业务线程池的线程数，0 表示使用 RpcServer 共享的业务线程池
+     * 慢服务使用独立线程池（舱壁隔离），不会耗尽其它服务的线程
+     */
+    int threads() default 0;
+
+    /**
+     * 该服务独立的业务线程池的队列长度，只在 threads() 大于 0 时生效，0 表示不排队
+     */
+    int queues() default 0;
+
+    /**
+     * 该服务响应的压缩方式（"lz4"、"snappy"、"zstd"），只压缩超过阈值的响应体
+     * 默认 "" 表示使用客户端请求指定的压缩方式
+     */
+    String compressor() default "";
+
+    /**
+     * 该服务同时处理（包括排队中）的请求数上限，超过时直接回复过载，客户端换一个服务提供者重试
+     * 默认 0 表示不限制
+     */
+    int maxInFlight() default 0;
+
+    /**
+     * 缓存响应的方法名（同名的重载方法都缓存），只应声明结果只取决于参数的幂等方法
+     * 缓存的是编码好的响应帧，相同参数的请求直接写回缓存的帧，不再调用服务方法，异常不缓存
+     */
+    String[] cacheMethods() default {};
+
+    /**
+     * 缓存的响应的有效时间（毫秒），缓存占用的堆外内存上限见 RpcServer.setResponseCacheMaxBytes
+     */
+    long cacheTtlMillis() default 60000;
 }
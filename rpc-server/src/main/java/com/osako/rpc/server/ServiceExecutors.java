@@ -0,0 +1,56 @@
+package com.osako.rpc.server;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 业务线程池工厂，服务方法在这些线程池中执行，不占用 Netty 的 I/O 线程
+ */
+public final class ServiceExecutors {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ServiceExecutors.class);
+
+    private ServiceExecutors() {
+    }
+
+    /**
+     * 创建有界线程池，线程数和队列长度都固定，队列满时拒绝任务（由 RpcServerHandler 回复服务繁忙）
+     * @param name 线程名前缀
+     * @param threads 线程数
+     * @param queues 队列长度，0 表示不排队
+     * @return
+     */
+    public static ExecutorService newBoundedExecutor(String name, int threads, int queues) {
+        BlockingQueue<Runnable> queue = queues > 0 ? new ArrayBlockingQueue<>(queues) : new SynchronousQueue<>();
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, queue,
+                new DefaultThreadFactory(name), new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 每个请求一个虚拟线程（JDK 21+），当前 JDK 不支持时退回有界线程池
+     * 项目以 JDK 11 为编译目标，所以通过反射调用 Executors.newVirtualThreadPerTaskExecutor()
+     * @param name 退回有界线程池时的线程名前缀
+     * @param threads 退回有界线程池时的线程数
+     * @param queues 退回有界线程池时的队列长度
+     * @return
+     */
+    public static ExecutorService newVirtualThreadExecutor(String name, int threads, int queues) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            LOGGER.warn("virtual threads are not supported by this JDK, use a bounded thread pool instead");
+            return newBoundedExecutor(name, threads, queues);
+        }
+    }
+}
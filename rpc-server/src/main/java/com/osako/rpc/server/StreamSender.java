@@ -0,0 +1,257 @@
+package com.osako.rpc.server;
+
+import com.osako.codec.ProtocolConstant;
+import com.osako.entity.MessageType;
+import com.osako.entity.RpcRequest;
+import com.osako.entity.RpcResponse;
+import io.netty.channel.ChannelHandlerContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * 流式结果的发送端：服务方法返回 Iterator / Stream / Flow.Publisher 时，每个元素作为一个 STREAM 帧发送，最后发送 STREAM_END
+ * 基于信用值的流控：最多发送客户端授予的元素个数（初始为 STREAM_INITIAL_CREDIT），客户端消费后再通过 CREDIT 帧授予更多，
+ * 两端都不会缓存整个结果
+ */
+class StreamSender implements Flow.Subscriber<Object> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StreamSender.class);
+
+    private final ChannelHandlerContext ctx;
+    private final RpcRequest request;
+    private final Executor executor;
+    private final byte compressor;
+    // 该连接上正在发送的流，requestId 与 发送端
+    private final Map<Long, StreamSender> streams;
+    // 流结束（发送完、失败或被取消）时调用一次，参数为失败原因，由调用方归还在途请求名额
+    private final Consumer<Throwable> onEnd;
+
+    // Iterator / Stream 结果：在业务线程池中拉取元素
+    private Iterator<?> iterator;
+    private AutoCloseable closeable;
+    private final AtomicLong credit = new AtomicLong(ProtocolConstant.STREAM_INITIAL_CREDIT);
+    private final AtomicInteger wip = new AtomicInteger();
+
+    // Flow.Publisher 结果：信用值在 drain() 中转换为 request(n)
+    private volatile Flow.Subscription subscription;
+
+    // 客户端取消了该流，或者连接已关闭
+    private volatile boolean cancelled;
+    // Stream 已关闭、Subscription 已取消，只在 drain() 中访问
+    private boolean released;
+
+    private final AtomicBoolean done = new AtomicBoolean();
+
+    StreamSender(ChannelHandlerContext ctx, RpcRequest request, Executor executor, byte compressor,
+                 Map<Long, StreamSender> streams, Consumer<Throwable> onEnd) {
+        this.ctx = ctx;
+        this.request = request;
+        this.executor = executor;
+        this.compressor = compressor;
+        this.streams = streams;
+        this.onEnd = onEnd;
+    }
+
+    static boolean isStream(Object result) {
+        return result instanceof Iterator || result instanceof Stream || result instanceof Flow.Publisher;
+    }
+
+    /**
+     * 开始发送服务方法返回的流式结果，在业务线程中调用
+     * @param result Iterator / Stream / Flow.Publisher
+     */
+    void start(Object result) {
+        if (result instanceof Stream) {
+            Stream<?> stream = (Stream<?>) result;
+            closeable = stream;
+            iterator = stream.iterator();
+        } else if (result instanceof Iterator) {
+            iterator = (Iterator<?>) result;
+        }
+        // 先登记再发送第一个元素，之后客户端发来的 CREDIT / CANCEL 一定能找到该流
+        streams.put(request.getRequestId(), this);
+        if (!ctx.channel().isActive()) {
+            // 连接在服务方法执行期间已关闭，channelInactive 取消不到该流
+            cancel();
+            return;
+        }
+        if (result instanceof Flow.Publisher) {
+            ((Flow.Publisher<?>) result).subscribe(this);
+            return;
+        }
+        if (wip.getAndIncrement() == 0) {
+            drain();
+        }
+    }
+
+    /**
+     * 客户端授予了更多信用值，在 I/O 线程中调用
+     */
+    void onCredit(int n) {
+        if (n <= 0 || done.get()) {
+            return;
+        }
+        credit.addAndGet(n);
+        schedule();
+    }
+
+    /**
+     * 客户端取消了该流，或者连接已关闭，在 I/O 线程中调用
+     * 流的关闭和 Subscription 的取消交给 drain()，不会与正在拉取元素的业务线程并发
+     */
+    void cancel() {
+        if (!done.compareAndSet(false, true)) {
+            return;
+        }
+        cancelled = true;
+        streams.remove(request.getRequestId());
+        schedule();
+        onEnd.accept(null);
+    }
+
+    /**
+     * 在业务线程池中执行 drain()：拉取元素和调用 Subscription 都可能阻塞或执行服务代码，不在 I/O 线程中进行
+     */
+    private void schedule() {
+        if (wip.getAndIncrement() != 0) {
+            // 正在执行的 drain() 会再循环一次
+            return;
+        }
+        try {
+            executor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            // 业务线程池已关闭，结束该流；没有其它线程在执行 drain()，在当前线程中释放流
+            end(new RuntimeException("service is busy"));
+            cancelled = true;
+            drain();
+        }
+    }
+
+    /**
+     * 所有对 Iterator / Stream / Subscription 的操作都在这里进行，同一时刻只有一个线程在执行：
+     * Iterator / Stream 结果在信用值用完或元素取完之前持续发送，Flow.Publisher 结果把信用值转换为 request(n)，
+     * 流结束或被取消后关闭 Stream、取消 Subscription
+     */
+    private void drain() {
+        int missed = 1;
+        for (;;) {
+            if (iterator != null) {
+                while (!done.get() && credit.get() > 0) {
+                    Object element;
+                    try {
+                        if (!iterator.hasNext()) {
+                            end(null);
+                            break;
+                        }
+                        element = iterator.next();
+                    } catch (Exception e) {
+                        LOGGER.error("stream failure", e);
+                        end(e);
+                        break;
+                    }
+                    credit.decrementAndGet();
+                    ctx.write(newResponse(MessageType.STREAM, element));
+                }
+                ctx.flush();
+            } else if (subscription != null && !done.get()) {
+                long n = credit.getAndSet(0);
+                if (n > 0) {
+                    subscription.request(n);
+                }
+            }
+            if (done.get()) {
+                release();
+            }
+            missed = wip.addAndGet(-missed);
+            if (missed == 0) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 关闭 Stream 结果，被取消时取消 Subscription，只在 drain() 中调用
+     */
+    private void release() {
+        if (released) {
+            return;
+        }
+        Flow.Subscription subscription = this.subscription;
+        if (iterator == null && subscription == null) {
+            // 还没有订阅，onSubscribe() 中再取消
+            return;
+        }
+        released = true;
+        if (cancelled && subscription != null) {
+            subscription.cancel();
+        }
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                LOGGER.warn("close stream failure", e);
+            }
+        }
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        // 初始信用值 STREAM_INITIAL_CREDIT 在 drain() 中转换为 request(n)，在发布者的线程中执行
+        if (wip.getAndIncrement() == 0) {
+            drain();
+        }
+    }
+
+    @Override
+    public void onNext(Object item) {
+        if (!done.get()) {
+            ctx.writeAndFlush(newResponse(MessageType.STREAM, item));
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        LOGGER.error("stream failure", throwable);
+        end(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        end(null);
+    }
+
+    private void end(Throwable cause) {
+        if (!done.compareAndSet(false, true)) {
+            return;
+        }
+        streams.remove(request.getRequestId());
+        RpcResponse response = newResponse(MessageType.STREAM_END, null);
+        if (cause != null) {
+            response.setException(cause instanceof Exception ? (Exception) cause : new RuntimeException(cause));
+        }
+        ctx.writeAndFlush(response);
+        onEnd.accept(cause);
+    }
+
+    private RpcResponse newResponse(byte messageType, Object result) {
+        RpcResponse response = new RpcResponse();
+        response.setMessageType(messageType);
+        response.setRequestId(request.getRequestId());
+        response.setSerializer(request.getSerializer());
+        response.setCompressor(compressor);
+        response.setResult(result);
+        return response;
+    }
+}